@@ -6,32 +6,44 @@ import com.paxos.tools.ProfileManager;
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
 
 public class App {
     public static void main(String[] args) {
         if (args.length < 2) {
-            Logger.log("Usage: java -jar paxos.jar <memberId> [--profile <profile>] [--configPath <path2config>]");
+            Logger.log("Usage: java -jar paxos.jar <memberId> [--profile <profile>] [--configPath <path2config>] [--fast] [--groups <count>] [--join] [--mencius] [--shm <dir>]");
             Logger.log("profile options: 'RELIABLE' 'LATENT' 'FAILING' 'STANDARD'");
             return;
         }
 
         // extract values from arguments
-        String memberId = args[0];
-        ProfileManager.MemberProfile profile = ProfileManager.MemberProfile.STANDARD;
-        String configPath = "./cluster.conf";
+        PaxosConfig config = new PaxosConfig(args[0]);
 
         for (int i = 1; i < args.length; i++){
             if (args[i].equalsIgnoreCase("--profile") && i+1 != args.length){
-                profile = ProfileManager.MemberProfile.valueOf(args[i+1]);
+                config.profile(ProfileManager.MemberProfile.valueOf(args[i+1]));
                 i++;
             } else if (args[i].equalsIgnoreCase("--configPath") && i+1 != args.length){
-                configPath = args[i+1];
+                config.configPath(args[i+1]);
+                i++;
+            } else if (args[i].equalsIgnoreCase("--fast")){
+                config.fastPaxos(true);
+            } else if (args[i].equalsIgnoreCase("--groups") && i+1 != args.length){
+                config.groups(Integer.parseInt(args[i+1]));
+                i++;
+            } else if (args[i].equalsIgnoreCase("--join")){
+                config.joining(true);
+            } else if (args[i].equalsIgnoreCase("--mencius")){
+                config.mencius(true);
+            } else if (args[i].equalsIgnoreCase("--shm") && i+1 != args.length){
+                config.sharedMemory(args[i+1]);
                 i++;
             }
         }
 
         // init the paxos controller
-        Paxos paxosManager = new Paxos(memberId, profile, configPath);
+        Paxos paxosManager = new Paxos(config);
 
 
         // Step 4: Console loop to propose values
@@ -53,7 +65,15 @@ public class App {
                 }
                 if (!line.isEmpty()) {
                     // start proposal with the value
-                    paxosManager.initiateProposal(line);
+                    paxosManager.propose(line).whenComplete((decided, error) -> {
+                        if (error == null) {
+                            System.out.println("[main] Decided: " + decided);
+                        } else if (unwrap(error) instanceof RejectedExecutionException) {
+                            System.out.println("[main] Cluster busy - proposal rejected, try again");
+                        } else {
+                            System.out.println("[main] Proposal failed: " + unwrap(error).getMessage());
+                        }
+                    });
                 }
             } catch (IOException e) {
                 throw new RuntimeException("Failed to read line " + e);
@@ -65,4 +85,8 @@ public class App {
         System.out.println("Shutting down...");
         paxosManager.killPaxosNode();
     }
+
+    private static Throwable unwrap(Throwable error) {
+        return error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+    }
 }
@@ -0,0 +1,378 @@
+package com.paxos;
+
+import com.paxos.tools.Logger;
+import com.paxos.tools.Message;
+import com.paxos.tools.ProfileManager;
+
+import java.io.*;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Load generator and latency benchmark - drives proposals against a cluster and reports
+ * throughput and commit latency percentiles as JSON.
+ * Proposals are sent like any client's - untagged, so the member picks the group (or log slot) - and the member
+ * replies once the value's group is decided. In group mode a group decides once, so later values sent to it are
+ * superseded by its decided value - use a cluster in rotating slot mode to commit every value.
+ */
+public class LoadGenerator {
+    private static final int STARTUP_TIMEOUT_MS = 15000;
+
+    private final Map<String, InetSocketAddress> members = new LinkedHashMap<>();
+    // proposed value -> decision time in nanos, null if another value was decided instead
+    private final Map<String, CompletableFuture<Long>> inFlight = new ConcurrentHashMap<>();
+    private final AtomicInteger superseded = new AtomicInteger();
+    private final List<Long> latenciesNanos = Collections.synchronizedList(new ArrayList<>());
+    private final AtomicInteger sent = new AtomicInteger();
+    private final AtomicInteger failed = new AtomicInteger();
+    private final AtomicLong sequence = new AtomicLong();
+    private final String runId = Long.toString(System.currentTimeMillis(), 36);
+
+    private ServerSocket replySocket;
+    private volatile boolean running = true;
+
+    public static void main(String[] args) throws Exception {
+        String configPath = "./cluster.conf";
+        String mode = "closed";
+        String profiles = "STANDARD";
+        boolean launch = false;
+        boolean mencius = false;
+        int concurrency = 4;
+        double rate = 10;
+        int durationSec = 30;
+        int valueSize = 16;
+        int timeoutMs = 15000;
+        String output = null;
+
+        for (int i = 0; i < args.length; i++) {
+            boolean hasValue = i + 1 != args.length;
+            if (args[i].equalsIgnoreCase("--configPath") && hasValue) configPath = args[++i];
+            else if (args[i].equalsIgnoreCase("--mode") && hasValue) mode = args[++i].toLowerCase();
+            else if (args[i].equalsIgnoreCase("--profiles") && hasValue) profiles = args[++i];
+            else if (args[i].equalsIgnoreCase("--launch")) launch = true;
+            else if (args[i].equalsIgnoreCase("--mencius")) mencius = true;
+            else if (args[i].equalsIgnoreCase("--concurrency") && hasValue) concurrency = Integer.parseInt(args[++i]);
+            else if (args[i].equalsIgnoreCase("--rate") && hasValue) rate = Double.parseDouble(args[++i]);
+            else if (args[i].equalsIgnoreCase("--duration") && hasValue) durationSec = Integer.parseInt(args[++i]);
+            else if (args[i].equalsIgnoreCase("--valueSize") && hasValue) valueSize = Integer.parseInt(args[++i]);
+            else if (args[i].equalsIgnoreCase("--timeout") && hasValue) timeoutMs = Integer.parseInt(args[++i]);
+            else if (args[i].equalsIgnoreCase("--output") && hasValue) output = args[++i];
+            else {
+                usage();
+                return;
+            }
+        }
+        if (!mode.equals("closed") && !mode.equals("open")) {
+            Logger.log("Invalid mode: " + mode);
+            usage();
+            return;
+        }
+
+        LoadGenerator generator = new LoadGenerator();
+        generator.readConfig(configPath);
+        List<ProfileManager.MemberProfile> assigned = generator.assignProfiles(profiles);
+
+        List<Process> processes = new ArrayList<>();
+        try {
+            if (launch) processes = generator.launchCluster(configPath, assigned, mencius);
+            generator.startReplyServer();
+
+            long start = System.nanoTime();
+            if (mode.equals("open")) generator.runOpenLoop(rate, durationSec, valueSize, timeoutMs);
+            else generator.runClosedLoop(concurrency, durationSec, valueSize, timeoutMs);
+            long elapsed = System.nanoTime() - start;
+
+            String report = generator.report(mode, profiles, launch, concurrency, rate, valueSize, elapsed);
+            if (output == null) {
+                System.out.println(report);
+            } else {
+                try (Writer writer = new FileWriter(output)) {
+                    writer.write(report);
+                    writer.write(System.lineSeparator());
+                }
+            }
+        } finally {
+            generator.stop();
+            for (Process process : processes) process.destroy();
+            for (Process process : processes) {
+                if (!process.waitFor(3, TimeUnit.SECONDS)) process.destroyForcibly();
+            }
+        }
+    }
+
+    private static void usage() {
+        Logger.log("Usage: java -cp paxos.jar com.paxos.LoadGenerator [--configPath <path>] [--launch] [--mencius] " +
+                "[--profiles <PROFILE[:count],...>] [--mode closed|open] [--concurrency <n>] [--rate <per sec>] " +
+                "[--duration <sec>] [--valueSize <chars>] [--timeout <ms>] [--output <file>]");
+    }
+
+    /**
+     * Reads the member addresses from the cluster config
+     *
+     * @param configPath path to config file
+     */
+    private void readConfig(String configPath) throws IOException {
+        try (BufferedReader reader = new BufferedReader(new FileReader(configPath))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#")) continue;
+
+                // line format: {name} {uri} {port} [learner]
+                String[] parts = line.split("\\s+");
+                if (parts.length < 3) continue;
+                members.put(parts[0], new InetSocketAddress(parts[1], Integer.parseInt(parts[2])));
+            }
+        }
+        if (members.isEmpty()) throw new IOException("No members found in " + configPath);
+    }
+
+    /**
+     * Assigns profiles to the members in config order from a mix such as {@code RELIABLE:5,LATENT:2,STANDARD}.
+     * A profile without a count fills the remaining members.
+     *
+     * @param mix the profile mix
+     * @return the profile of each member in config order
+     */
+    private List<ProfileManager.MemberProfile> assignProfiles(String mix) {
+        List<ProfileManager.MemberProfile> assigned = new ArrayList<>();
+        ProfileManager.MemberProfile fill = ProfileManager.MemberProfile.STANDARD;
+        for (String part : mix.split(",")) {
+            String[] pieces = part.trim().split(":");
+            ProfileManager.MemberProfile profile = ProfileManager.MemberProfile.valueOf(pieces[0].trim().toUpperCase());
+            if (pieces.length == 1) {
+                fill = profile;
+                continue;
+            }
+            int count = Integer.parseInt(pieces[1].trim());
+            for (int i = 0; i < count && assigned.size() < members.size(); i++) assigned.add(profile);
+        }
+        while (assigned.size() < members.size()) assigned.add(fill);
+        return assigned;
+    }
+
+    /**
+     * Starts a member process per config entry and waits for them to listen
+     *
+     * @param configPath path to config file
+     * @param profiles profile of each member in config order
+     * @param mencius true to start the members in rotating slot mode
+     * @return the started processes
+     */
+    private List<Process> launchCluster(String configPath, List<ProfileManager.MemberProfile> profiles, boolean mencius)
+            throws Exception {
+        String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+        String classPath = System.getProperty("java.class.path");
+        File logDir = new File("./logs/bench");
+        logDir.mkdirs();
+
+        List<Process> processes = new ArrayList<>();
+        int i = 0;
+        for (String memberId : members.keySet()) {
+            List<String> command = new ArrayList<>(List.of(java, "-cp", classPath, App.class.getName(), memberId,
+                    "--profile", profiles.get(i++).name(), "--configPath", configPath));
+            if (mencius) command.add("--mencius");
+            ProcessBuilder builder = new ProcessBuilder(command);
+            builder.redirectErrorStream(true);
+            builder.redirectOutput(new File(logDir, memberId + ".log"));
+            builder.redirectInput(ProcessBuilder.Redirect.PIPE);
+            processes.add(builder.start());
+        }
+
+        long deadline = System.currentTimeMillis() + STARTUP_TIMEOUT_MS;
+        for (InetSocketAddress addr : members.values()) {
+            while (true) {
+                try {
+                    new Socket(addr.getHostString(), addr.getPort()).close();
+                    break;
+                } catch (IOException e) {
+                    if (System.currentTimeMillis() > deadline) throw new IOException("Member at " + addr + " did not start");
+                    Thread.sleep(100);
+                }
+            }
+        }
+        return processes;
+    }
+
+    /**
+     * Listens for the decision notifications sent back by the members
+     */
+    private void startReplyServer() throws IOException {
+        replySocket = new ServerSocket(0);
+        Thread acceptor = new Thread(() -> {
+            while (running) {
+                try {
+                    Socket client = replySocket.accept();
+                    Thread reader = new Thread(() -> readReplies(client));
+                    reader.setDaemon(true);
+                    reader.start();
+                } catch (IOException e) {
+                    if (running) Logger.log("[LoadGenerator] Error accepting reply: " + e.getMessage());
+                }
+            }
+        }, "bench-replies");
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    private void readReplies(Socket client) {
+        try (client; BufferedReader in = new BufferedReader(new InputStreamReader(client.getInputStream()))) {
+            String line;
+            while ((line = in.readLine()) != null) {
+                Message msg = Message.fromJson(line);
+                CompletableFuture<Long> pending = msg.getProposalValue() == null ? null : inFlight.remove(msg.getProposalValue());
+                if (pending == null) continue;
+                pending.complete(msg.getProposalValue().equals(msg.getAcceptedValue()) ? System.nanoTime() : null);
+            }
+        } catch (IOException | IllegalArgumentException ignored) {
+        }
+    }
+
+    /**
+     * Sends one proposal to the next member (round robin) - the value is unique so its reply can be matched
+     *
+     * @return the future completed with the decision time in nanos, or null if the value was superseded
+     */
+    private CompletableFuture<Long> propose(int valueSize, int timeoutMs) {
+        long n = sequence.getAndIncrement();
+        String proposal = runId + "-" + n + "-" + randomValue(valueSize);
+        CompletableFuture<Long> decided = new CompletableFuture<>();
+        inFlight.put(proposal, decided);
+        decided.orTimeout(timeoutMs, TimeUnit.MILLISECONDS).whenComplete((at, e) -> inFlight.remove(proposal, decided));
+
+        List<InetSocketAddress> targets = new ArrayList<>(members.values());
+        InetSocketAddress target = targets.get((int) (n % targets.size()));
+        Message value = new Message(Message.MessageType.VALUE, null, null, proposal, null, null, null,
+                "localhost:" + replySocket.getLocalPort());
+
+        sent.incrementAndGet();
+        try (Socket socket = new Socket(target.getHostString(), target.getPort());
+             BufferedWriter out = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream()))) {
+            out.write(value.toString());
+            out.newLine();
+            out.flush();
+        } catch (IOException e) {
+            decided.completeExceptionally(e);
+        }
+        return decided;
+    }
+
+    /**
+     * Closed loop - each worker keeps exactly one proposal outstanding
+     */
+    private void runClosedLoop(int concurrency, int durationSec, int valueSize, int timeoutMs) throws InterruptedException {
+        long end = System.nanoTime() + TimeUnit.SECONDS.toNanos(durationSec);
+        ExecutorService workers = Executors.newFixedThreadPool(concurrency);
+        for (int w = 0; w < concurrency; w++) {
+            workers.execute(() -> {
+                while (System.nanoTime() < end) {
+                    long start = System.nanoTime();
+                    record(propose(valueSize, timeoutMs), start).join();
+                }
+            });
+        }
+        workers.shutdown();
+        workers.awaitTermination(durationSec + timeoutMs / 1000 + 5, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Open loop - proposals are started at a fixed rate regardless of outstanding ones,
+     * latency is measured from the intended start time
+     */
+    private void runOpenLoop(double rate, int durationSec, int valueSize, int timeoutMs) throws InterruptedException {
+        long intervalNanos = (long) (TimeUnit.SECONDS.toNanos(1) / rate);
+        long start = System.nanoTime();
+        long end = start + TimeUnit.SECONDS.toNanos(durationSec);
+        List<CompletableFuture<Void>> outstanding = new ArrayList<>();
+
+        for (long intended = start; intended < end; intended += intervalNanos) {
+            long wait = intended - System.nanoTime();
+            if (wait > 0) TimeUnit.NANOSECONDS.sleep(wait);
+            outstanding.add(record(propose(valueSize, timeoutMs), intended));
+        }
+        // every proposal times out on its own, so this returns within timeoutMs of the last one
+        CompletableFuture.allOf(outstanding.toArray(new CompletableFuture[0])).join();
+    }
+
+    /**
+     * Counts the outcome of a proposal once it completes - only values that were decided themselves add a latency
+     *
+     * @param decided the future returned by propose
+     * @param start the time the latency is measured from
+     * @return a future completed once the outcome is counted
+     */
+    private CompletableFuture<Void> record(CompletableFuture<Long> decided, long start) {
+        return decided.handle((at, e) -> {
+            if (e != null) failed.incrementAndGet();
+            else if (at == null) superseded.incrementAndGet();
+            else latenciesNanos.add(at - start);
+            return null;
+        });
+    }
+
+    private static String randomValue(int size) {
+        StringBuilder sb = new StringBuilder(size);
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        for (int i = 0; i < size; i++) sb.append((char) ('a' + random.nextInt(26)));
+        return sb.toString();
+    }
+
+    /**
+     * Builds the machine readable report
+     */
+    private String report(String mode, String profiles, boolean launched, int concurrency, double rate, int valueSize,
+                          long elapsedNanos) {
+        List<Long> sorted;
+        synchronized (latenciesNanos) {
+            sorted = new ArrayList<>(latenciesNanos);
+        }
+        Collections.sort(sorted);
+        double seconds = elapsedNanos / 1e9;
+        double mean = sorted.stream().mapToLong(Long::longValue).average().orElse(0) / 1e6;
+
+        Map<String, String> fields = new LinkedHashMap<>();
+        fields.put("mode", "\"" + mode + "\"");
+        fields.put("members", String.valueOf(members.size()));
+        fields.put("profiles", "\"" + profiles + "\"");
+        fields.put("launched", String.valueOf(launched));
+        fields.put(mode.equals("open") ? "rate" : "concurrency", mode.equals("open") ? String.valueOf(rate) : String.valueOf(concurrency));
+        fields.put("valueSize", String.valueOf(valueSize));
+        fields.put("durationSec", format(seconds));
+        fields.put("sent", String.valueOf(sent.get()));
+        fields.put("committed", String.valueOf(sorted.size()));
+        fields.put("superseded", String.valueOf(superseded.get()));
+        fields.put("failed", String.valueOf(failed.get()));
+        fields.put("throughputPerSec", format(sorted.size() / seconds));
+        fields.put("latencyMeanMs", format(mean));
+        fields.put("latencyP50Ms", format(percentile(sorted, 0.50)));
+        fields.put("latencyP99Ms", format(percentile(sorted, 0.99)));
+        fields.put("latencyP999Ms", format(percentile(sorted, 0.999)));
+        fields.put("latencyMaxMs", format(sorted.isEmpty() ? 0 : sorted.get(sorted.size() - 1) / 1e6));
+
+        StringJoiner json = new StringJoiner(",", "{", "}");
+        fields.forEach((k, v) -> json.add("\"" + k + "\":" + v));
+        return json.toString();
+    }
+
+    private static double percentile(List<Long> sorted, double p) {
+        if (sorted.isEmpty()) return 0;
+        int index = (int) Math.ceil(p * sorted.size()) - 1;
+        return sorted.get(Math.max(0, Math.min(sorted.size() - 1, index))) / 1e6;
+    }
+
+    private static String format(double value) {
+        return String.format(Locale.ROOT, "%.3f", value);
+    }
+
+    private void stop() {
+        running = false;
+        try {
+            if (replySocket != null) replySocket.close();
+        } catch (IOException ignored) {}
+    }
+}
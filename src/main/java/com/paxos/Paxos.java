@@ -1,103 +1,923 @@
 package com.paxos;
 
-import com.paxos.roles.Acceptor;
-import com.paxos.roles.Learner;
-import com.paxos.roles.Proposer;
+import com.paxos.roles.CasAcceptor;
+import com.paxos.roles.CasProposer;
+import com.paxos.tools.EventLoop;
 import com.paxos.tools.Logger;
+import com.paxos.tools.Membership;
 import com.paxos.tools.Message;
 import com.paxos.tools.NetworkManager;
 import com.paxos.tools.ProfileManager;
+import com.paxos.tools.SimpleJsonUtil;
 
 import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.TimeoutException;
+import java.util.function.BiConsumer;
+import java.util.function.BooleanSupplier;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.function.UnaryOperator;
 
 /**
- * Paxos controller - core of the paxos algorithm
+ * Paxos controller - core of the paxos algorithm.
+ * Hosts any number of independent consensus groups over the one shared NetworkManager.
+ * All role state is owned by a single event loop thread, network threads only post messages to its mailbox.
+ * Can be embedded - values are proposed with {@link #propose} and decisions followed with {@link #subscribe}.
+ * Independent compare-and-set registers are changed with {@link #change} outside of any group (CASPaxos).
+ * Members configured as learners never vote, they are streamed decisions and serve {@link #getDecided} locally.
+ * In rotating slot mode the log of slot groups is kept by a SlotLog, this class only routes to it.
  */
-public class Paxos {
+public class Paxos implements AutoCloseable {
+    /**
+     * Group used by messages that carry no group id (e.g. the scenario scripts)
+     */
+    public static final String DEFAULT_GROUP = "0";
+
+    /**
+     * Membership changes are decided in their own group per configuration epoch i.e. cfg-1, cfg-2...
+     */
+    public static final String CONFIG_GROUP_PREFIX = "cfg-";
+
+    /**
+     * Log slots of the rotating owner (Mencius) mode are groups slot-0, slot-1... owned round-robin by the voters
+     */
+    public static final String SLOT_PREFIX = "slot-";
+
+    /**
+     * Value decided for a skipped or revoked log slot
+     */
+    public static final String NO_OP = "#no-op";
+
+    /**
+     * In rotating slot mode membership changes are committed in the log as {@code #config <change>}, so every member
+     * agrees from which slot they reassign ownership
+     */
+    public static final String CONFIG_PREFIX = "#config ";
+
+    /**
+     * Slots a member may run ahead of the first slot it has not applied. A change committed in slot s reassigns the
+     * slots from s + SLOT_WINDOW, so the owners of every slot a member proposes in or skips are known to it
+     */
+    public static final int SLOT_WINDOW = 256;
+
+    private static final int MAX_EPOCH_LEAD = 64; // config groups of epochs further ahead are dropped
+
     private final String memberId;
     private final NetworkManager networkManager;
+    private final boolean fastPaxos;
+    private final int groupCount;
+    private final boolean mencius;
+    private final long proposeTimeoutMs;
+
+    // Consensus groups - created on first use so members need not agree on creation order
+    private final Map<String, PaxosGroup> groups = new HashMap<>();
+    private final EventLoop eventLoop;
 
-    // Paxos roles
-    private final Acceptor acceptor;
-    private final Learner learner;
-    private final Proposer proposer;
+    // Clients waiting to be told of a group's decision (groupId -> their VALUE requests)
+    private final Map<String, List<Message>> decisionWatchers = new HashMap<>();
 
-    // Recovery Handling
+    // In-process proposals waiting on their group's decision and decision subscribers
+    private final Map<String, List<CompletableFuture<String>>> pendingProposals = new HashMap<>();
+    private final List<BiConsumer<String, String>> subscribers = new CopyOnWriteArrayList<>();
+
+    // CASPaxos registers - one rewritable register per key, no shared log
+    private final CasAcceptor casAcceptor;
+    private final CasProposer casProposer;
+
+    // Commands committed in the rotating slot log are applied here in log order off the event loop, batched so
+    // independent keys apply in parallel - independent groups have no order between them so are never applied
+    private final StateMachine stateMachine = new StateMachine(ForkJoinPool.commonPool());
+    private final SlotLog slotLog;
+
+    // Recovery Handling - shared by all groups
     private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
-    private final int RETRY_TIMEOUT = 5000; // 5 second
-    private final AtomicBoolean retryActive = new AtomicBoolean(false);
+
+    // Reconfiguration - decided changes are applied strictly in epoch order
+    private final Map<Integer, String> decidedConfigs = new HashMap<>();
+    private final Deque<String> localChanges = new ArrayDeque<>();
+    private int syncTarget = -1;
+    private int syncSlot = -1; // first slot after the donor's snapshot, -1 if it sent none
+    private String syncDonor = null;
+    private boolean promoteRequested = false;
+
+    // acceptor state taken over from the previous configuration before voting in a new epoch
+    private int stateEpoch = 0; // latest epoch this member's acceptors may vote in
+    private int transferEpoch = 0; // epoch the state is being taken over for
+    private final Set<String> stateSources = new TreeSet<>(); // previous voters the state was taken from
+
+    // Learners ask their feed source for everything decided so far whenever it changes
+    private String feedSource = null;
 
     public Paxos(String memberId, ProfileManager.MemberProfile profile, String configPath) {
-        Logger.log("Starting Paxos Member: " + memberId + " with profile: " + profile);
-        this.memberId = memberId;
-        this.networkManager = new NetworkManager(memberId, profile, configPath, this);
+        this(memberId, profile, configPath, false, 1, false, false);
+    }
+
+    public Paxos(String memberId, ProfileManager.MemberProfile profile, String configPath, boolean fastPaxos, int groupCount,
+                 boolean joining, boolean mencius) {
+        this(new PaxosConfig(memberId).profile(profile).configPath(configPath).fastPaxos(fastPaxos).groups(groupCount)
+                .joining(joining).mencius(mencius));
+    }
+
+    public Paxos(PaxosConfig config) {
+        Logger.log("Starting Paxos Member: " + config.getMemberId() + " with profile: " + config.getProfile() +
+                (config.isFastPaxos() ? " (fast)" : "") + " groups: " + config.getGroupCount() +
+                (config.isJoining() ? " (joining)" : "") + (config.isMencius() ? " (rotating slots)" : ""));
+        this.memberId = config.getMemberId();
+        this.fastPaxos = config.isFastPaxos();
+        this.groupCount = Math.max(1, config.getGroupCount());
+        this.mencius = config.isMencius();
+        this.proposeTimeoutMs = config.getProposeTimeoutMs();
+        this.eventLoop = new EventLoop("paxos-" + memberId);
+        this.networkManager = config.getMembers() != null
+                ? new NetworkManager(memberId, config.getProfile(), initialMembership(config), config.isJoining(), this)
+                : new NetworkManager(memberId, config.getProfile(), config.getConfigPath(), config.isJoining(), this);
+        this.slotLog = new SlotLog(memberId, this, groups, networkManager, stateMachine, scheduler, eventLoop);
+        this.casAcceptor = new CasAcceptor(memberId, networkManager);
+        this.casProposer = new CasProposer(memberId, networkManager, scheduler, eventLoop);
         try {
+            if (config.getSharedMemoryDir() != null) networkManager.enableSharedMemory(config.getSharedMemoryDir());
             networkManager.startServer();
         } catch (IOException e) {
             throw new RuntimeException("Error: Failed to start server " + e);
         }
+        if (networkManager.isLearner(memberId)) {
+            Logger.log("[Paxos] " + memberId + " is a non-voting learner");
+            scheduler.scheduleAtFixedRate(() -> eventLoop.execute(this::checkFeedSource), 0, 1, TimeUnit.SECONDS);
+        }
+    }
 
-        int quorumSize = (networkManager.getClusterSize() / 2) + 1;
-
-        // init roles
-        this.acceptor = new Acceptor(memberId, networkManager, "./" + memberId + ".save");
-        this.learner = new Learner(memberId, networkManager.getClusterSize(), networkManager);
-        this.proposer = new Proposer(memberId, networkManager, quorumSize);
+    /**
+     * @param config options holding the members added in code
+     * @return the epoch 0 membership - every member not added as a learner votes
+     */
+    private static Membership initialMembership(PaxosConfig config) {
+        Set<String> voters = new TreeSet<>(config.getMembers().keySet());
+        voters.removeAll(config.getLearners());
+        return new Membership(0, config.getMembers(), voters, config.getLearners());
     }
 
     /**
-     * Main message dispatcher.
-     * Routes each incoming message to the correct Paxos role based on its type.
+     * Called by the network threads for every incoming message - hands it to the event loop.
      */
     public void onMessage(Message msg) {
+        eventLoop.execute(() -> dispatch(msg));
+    }
+
+    /**
+     * Main message dispatcher - runs on the event loop.
+     * Routes each incoming message to the consensus group it is tagged with.
+     * Untagged VALUE messages are partitioned by their value.
+     */
+    private void dispatch(Message msg) {
+        if (msg.getType() == Message.MessageType.VALUE && networkManager.isLearner(memberId)) {
+            // learners take no part in rounds - the client is answered by the voter
+            networkManager.sendMessage(networkManager.getFeedSource(memberId), msg);
+            return;
+        }
         switch (msg.getType()) {
-            case PREPARE -> {
-                retryHandler();
-                acceptor.onPrepare(msg);
+            case RECONFIG -> {
+                queueMembershipChange(msg.getProposalValue());
+                return;
+            }
+            case SYNC -> {
+                onSync(msg);
+                return;
+            }
+            case SNAPSHOT -> {
+                if (mencius) slotLog.onSnapshot(msg);
+                return;
+            }
+            case STATE_REQUEST -> {
+                onStateRequest(msg);
+                return;
+            }
+            case STATE -> {
+                onState(msg);
+                return;
+            }
+            case SUBSCRIBE -> {
+                onSubscribe(msg);
+                return;
+            }
+            case SKIP -> {
+                if (mencius) slotLog.onSkip(msg);
+                return;
+            }
+            case CAS_PREPARE -> {
+                if (networkManager.getMembership().countsToward(memberId) && isStateTaken()) casAcceptor.onPrepare(msg);
+                return;
+            }
+            case CAS_ACCEPT -> {
+                if (networkManager.getMembership().countsToward(memberId) && isStateTaken()) casAcceptor.onAccept(msg);
+                return;
+            }
+            case CAS_PROMISE -> {
+                casProposer.onPromise(msg);
+                return;
+            }
+            case CAS_ACCEPTED -> {
+                casProposer.onAccepted(msg);
+                return;
+            }
+            case CAS_NACK -> {
+                casProposer.onNack(msg);
+                return;
+            }
+        }
+
+        String groupId = msg.getGroupId();
+        if (groupId == null && mencius && msg.getType() == Message.MessageType.VALUE) {
+            String slotGroup = slotLog.proposeInOwnSlot(msg.getProposalValue());
+            if (slotGroup != null && msg.getReplyTo() != null) watchDecision(slotGroup, msg);
+            return;
+        }
+        if (mencius && groupId != null && groupId.startsWith(SLOT_PREFIX)) {
+            int slot = SlotLog.parseSlot(groupId);
+            if (!slotLog.inLog(slot, msg)) return;
+            slotLog.observeSlot(slot, msg.getSender());
+        }
+        if (groupId == null) {
+            groupId = msg.getType() == Message.MessageType.VALUE ? groupFor(msg.getProposalValue()) : DEFAULT_GROUP;
+        } else if (!isKnownGroup(groupId)) {
+            Logger.log("[dispatch] Dropping " + msg.getType() + " for unknown group " + groupId + " from " + msg.getSender());
+            return;
+        }
+        if (msg.getType() == Message.MessageType.VALUE && msg.getReplyTo() != null) {
+            watchDecision(groupId, msg);
+        }
+        getGroup(groupId).onMessage(msg);
+    }
+
+    /**
+     * Called to start a new election/proposal round - the value is used as the partitioning key.
+     *
+     * @return false if the proposal was rejected due to backpressure
+     */
+    public boolean initiateProposal(String candidateName) {
+        return initiateProposal(candidateName, candidateName);
+    }
+
+    /**
+     * Called to start a new election/proposal round in the group owning the key.
+     *
+     * @param key the partitioning key
+     * @param value the value to propose
+     * @return false if the proposal was rejected due to backpressure
+     */
+    public boolean initiateProposal(String key, String value) {
+        if (propose(key, value).isCompletedExceptionally()) {
+            Logger.log("[initiateProposal] Outbound queues full - rejecting proposal for " + value);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Proposes a value, the future completes with the value committed in the value's group (or log slot).
+     * This may be another member's value if the group had already been decided. The value is used as the partitioning key.
+     *
+     * @param value the value to propose
+     * @return the committed value - completes exceptionally if the proposal was rejected due to backpressure or was
+     * not decided within the propose timeout
+     */
+    public CompletableFuture<String> propose(String value) {
+        return propose(value, value);
+    }
+
+    /**
+     * Proposes a value in the group owning the key, the future completes once the group's decision is committed.
+     *
+     * @param key the partitioning key - ignored in rotating slot mode
+     * @param value the value to propose
+     * @return the committed value - completes exceptionally if the proposal was rejected due to backpressure or with a
+     * TimeoutException if it was not decided within the propose timeout (the value may still be chosen later)
+     */
+    public CompletableFuture<String> propose(String key, String value) {
+        CompletableFuture<String> result = new CompletableFuture<>();
+        if (networkManager.isLearner(memberId)) {
+            result.completeExceptionally(new UnsupportedOperationException("Learners cannot propose - propose on a voter"));
+            return result;
+        }
+        if (!networkManager.hasCapacity()) {
+            result.completeExceptionally(new RejectedExecutionException("Outbound queues full - proposal rejected"));
+            return result;
+        }
+
+        eventLoop.execute(() -> {
+            String groupId = mencius ? slotLog.proposeInOwnSlot(value) : groupFor(key);
+            if (groupId == null) {
+                result.completeExceptionally(new RejectedExecutionException("Proposal for " + value + " not started"));
+                return;
+            }
+            PaxosGroup group = getGroup(groupId);
+            if (!mencius && group.isDecided()) {
+                complete(result, group.getDecidedValue());
+                return;
+            }
+            pendingProposals.computeIfAbsent(groupId, id -> new ArrayList<>()).add(result);
+            if (!mencius && !group.initiateProposal(value)) {
+                removePending(groupId, result);
+                result.completeExceptionally(new RejectedExecutionException("Outbound queues full - proposal rejected"));
+                return;
+            }
+            ScheduledFuture<?> deadline = scheduler.schedule(() -> eventLoop.execute(() -> {
+                if (!removePending(groupId, result)) return;
+                ForkJoinPool.commonPool().execute(() -> result.completeExceptionally(new TimeoutException(
+                        "Group " + groupId + " did not decide within " + proposeTimeoutMs + "ms")));
+            }), proposeTimeoutMs, TimeUnit.MILLISECONDS);
+            result.whenComplete((decided, error) -> deadline.cancel(false));
+        });
+        return result;
+    }
+
+    /**
+     * @return true if the proposal was still waiting on the group's decision
+     */
+    private boolean removePending(String groupId, CompletableFuture<String> result) {
+        List<CompletableFuture<String>> waiting = pendingProposals.get(groupId);
+        if (waiting == null || !waiting.remove(result)) return false;
+        if (waiting.isEmpty()) pendingProposals.remove(groupId);
+        return true;
+    }
+
+    /**
+     * Reads a group's committed value from this member's state without a round, so it may lag the voters by the
+     * decisions still in flight to it - e.g. a group from {@link #groupFor} or a log slot {@code slot-<n>}
+     *
+     * @param groupId the group to read
+     * @return the committed value or null if the group has not decided yet (or is a log slot truncated once applied)
+     */
+    public CompletableFuture<String> getDecided(String groupId) {
+        CompletableFuture<String> result = new CompletableFuture<>();
+        eventLoop.execute(() -> {
+            PaxosGroup group = groups.get(groupId);
+            String value = group != null ? group.getDecidedValue() : null;
+            ForkJoinPool.commonPool().execute(() -> result.complete(value));
+        });
+        return result;
+    }
+
+    /**
+     * Reads a key from the state machine the {@code SET}/{@code DEL} commands of the rotating slot log are applied to
+     * (only used in rotating slot mode, as separate groups decide in no agreed order)
+     *
+     * @param key the state machine key
+     * @return the applied value or null if the key is not set
+     */
+    public CompletableFuture<String> get(String key) {
+        CompletableFuture<String> result = new CompletableFuture<>();
+        // queued on the loop so the read sees every slot this member applied before it was asked
+        eventLoop.execute(() -> stateMachine.get(key).whenComplete((value, e) -> {
+            if (e != null) result.completeExceptionally(e);
+            else result.complete(value);
+        }));
+        return result;
+    }
+
+    /**
+     * Changes a CASPaxos register - the function is applied to the register's current value by this member and the
+     * result written back to a quorum. Registers are independent of each other and of the consensus groups.
+     * The function may be called more than once if the round has to be retried so must not have side effects.
+     *
+     * @param key the register key
+     * @param function computes the new value from the current one (null if the register was never written)
+     * @return the new value - completes exceptionally if the change could not be made, with an
+     * IllegalStateException if a competing proposer interrupted the write so it may or may not have been applied
+     */
+    public CompletableFuture<String> change(String key, UnaryOperator<String> function) {
+        return changeRegister(key, current -> {
+            String next = function.apply(current);
+            return new CasProposer.Update(next, next);
+        });
+    }
+
+    /**
+     * Sets a CASPaxos register only if it holds the expected value
+     *
+     * @param key the register key
+     * @param expected the value the register must hold (null if never written)
+     * @param update the new value
+     * @return true if the register was updated
+     */
+    public CompletableFuture<Boolean> compareAndSet(String key, String expected, String update) {
+        // the comparison travels with the value so it is the one of the round that wrote it
+        return changeRegister(key, current -> Objects.equals(current, expected)
+                ? new CasProposer.Update(update, "true")
+                : new CasProposer.Update(current, "false")).thenApply(Boolean::parseBoolean);
+    }
+
+    /**
+     * @param function computes the value to write and the result the change completes with from the current value
+     * @return the result of the update that was written
+     */
+    private CompletableFuture<String> changeRegister(String key, Function<String, CasProposer.Update> function) {
+        CompletableFuture<String> result = new CompletableFuture<>();
+        if (networkManager.isLearner(memberId)) {
+            result.completeExceptionally(new UnsupportedOperationException("Learners cannot change registers - use a voter"));
+            return result;
+        }
+        eventLoop.execute(() -> casProposer.change(key, function, result));
+        return result;
+    }
+
+    /**
+     * Subscribes to committed decisions - called with the group id and value of every decision, log slots in slot order
+     * (skipped slots are not reported). Listeners run on the event loop so must not block.
+     *
+     * @param listener receives the group id and committed value
+     * @return closing it unsubscribes the listener
+     */
+    public AutoCloseable subscribe(BiConsumer<String, String> listener) {
+        subscribers.add(listener);
+        return () -> subscribers.remove(listener);
+    }
+
+    /**
+     * Completes a waiting proposal off the event loop so callers' continuations cannot hold it up
+     */
+    private static void complete(CompletableFuture<String> future, String value) {
+        ForkJoinPool.commonPool().execute(() -> {
+            if (NO_OP.equals(value)) future.completeExceptionally(new IllegalStateException("Slot was revoked before the value was chosen"));
+            else future.complete(value);
+        });
+    }
+
+    /**
+     * Key to group partitioning function
+     *
+     * @param key the key to partition on
+     * @return id of the group owning the key
+     */
+    public String groupFor(String key) {
+        if (key == null || groupCount == 1) return DEFAULT_GROUP;
+        return String.valueOf(Math.floorMod(key.hashCode(), groupCount));
+    }
+
+    /**
+     * Only groups this member could ever use are created for messages from the network, so peers and clients cannot
+     * grow the group map without limit - slots are bounded by the log window before getting here
+     *
+     * @param groupId the group id of a message
+     * @return true for a group from {@link #groupFor}, a log slot or the config group of an epoch not too far ahead
+     */
+    private boolean isKnownGroup(String groupId) {
+        if (groupId.startsWith(SLOT_PREFIX)) return mencius;
+        if (groupId.startsWith(CONFIG_GROUP_PREFIX)) {
+            int epoch;
+            try {
+                epoch = Integer.parseInt(groupId.substring(CONFIG_GROUP_PREFIX.length()));
+            } catch (NumberFormatException e) {
+                return false;
+            }
+            return epoch > 0 && epoch <= networkManager.getMembership().getEpoch() + MAX_EPOCH_LEAD;
+        }
+        try {
+            int group = Integer.parseInt(groupId);
+            return group >= 0 && group < groupCount && groupId.equals(String.valueOf(group));
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Gets a group creating it if it does not exist yet
+     *
+     * @param groupId id of the group
+     * @return the group
+     */
+    PaxosGroup getGroup(String groupId) {
+        // a slot is only ever in the configuration of its range so there is no state to take over for it
+        BooleanSupplier stateTaken = groupId.startsWith(SLOT_PREFIX) ? () -> true : this::isStateTaken;
+        return groups.computeIfAbsent(groupId, id -> new PaxosGroup(memberId, id, slotOwnerOf(id), configOf(id), stateTaken,
+                networkManager, scheduler, eventLoop, fastPaxos, this::onGroupDecided));
+    }
+
+    /**
+     * @return looks up the configuration the group's ballots are in when asked - a log slot's is the one of its range,
+     * only known once the log is applied to within SLOT_WINDOW of it, any other group's is the current membership
+     */
+    private Supplier<Membership> configOf(String groupId) {
+        int slot = groupId.startsWith(SLOT_PREFIX) ? SlotLog.parseSlot(groupId) : -1;
+        return slot >= 0 ? slotLog.configOf(slot) : networkManager::getMembership;
+    }
+
+    /**
+     * @return looks up the owner of the group's log slot when asked - null if the group is not a slot
+     */
+    private Supplier<String> slotOwnerOf(String groupId) {
+        int slot = groupId.startsWith(SLOT_PREFIX) ? SlotLog.parseSlot(groupId) : -1;
+        return slot >= 0 ? () -> slotLog.slotOwner(slot) : null;
+    }
+
+    /**
+     * Registers a client to be sent a LEARN once the group decides - sent straight away if already decided
+     *
+     * @param groupId the group to watch
+     * @param request the client's VALUE holding its reply address {@code host:port}
+     */
+    private void watchDecision(String groupId, Message request) {
+        String decided = getGroup(groupId).getDecidedValue();
+        if (decided == null) {
+            decisionWatchers.computeIfAbsent(groupId, id -> new ArrayList<>()).add(request);
+            return;
+        }
+        replyDecision(request, groupId, decided);
+    }
+
+    /**
+     * Tells a client the decision of the group its value went to - the proposal value echoes the client's value
+     * as the decided value may be another client's
+     */
+    private void replyDecision(Message request, String groupId, String decided) {
+        networkManager.reply(request.getReplyTo(), new Message(Message.MessageType.LEARN, memberId, null,
+                request.getProposalValue(), null, decided, groupId));
+    }
+
+    /**
+     * Proposes a membership change, it is retried in later epochs until it is committed
+     *
+     * @param change the change command e.g. {@code ADD M10 localhost 9010} or {@code REMOVE M3}
+     */
+    public void proposeMembershipChange(String change) {
+        eventLoop.execute(() -> queueMembershipChange(change));
+    }
+
+    private void queueMembershipChange(String change) {
+        if (change == null || change.isBlank()) return;
+        localChanges.addLast(change.trim());
+        if (localChanges.size() == 1) proposeNextChange();
+    }
+
+    /**
+     * Starts a proposal for the head of the local change queue in the next epoch's config group,
+     * or in rotating slot mode in this member's next slot. With no change queued the leader ends a joint configuration
+     */
+    void proposeNextChange() {
+        String change = localChanges.peekFirst();
+        if (change == null && !mencius && networkManager.getMembership().isJoint() && memberId.equals(networkManager.getLeader())) {
+            change = Membership.SETTLE;
+        }
+        if (change == null) return;
+        if (mencius) {
+            if (!slotLog.proposeChange(change)) handOffChange(change);
+            return;
+        }
+        String groupId = CONFIG_GROUP_PREFIX + (networkManager.getMembership().getEpoch() + 1);
+        Logger.log("[proposeNextChange] Proposing membership change '" + change + "' in " + groupId);
+        getGroup(groupId).initiateProposal(change);
+    }
+
+    /**
+     * A member owning no slots hands its membership change to the leader to propose in the log
+     */
+    private void handOffChange(String change) {
+        localChanges.pollFirst();
+        String leader = networkManager.getLeader();
+        Logger.log("[proposeNextChange] Owns no slots - sending membership change '" + change + "' to " + leader);
+        if (!leader.equals(memberId)) {
+            networkManager.sendMessage(leader, new Message(Message.MessageType.RECONFIG, memberId, null, change, null, null));
+        }
+        proposeNextChange();
+    }
+
+    /**
+     * Drops a committed membership change from the head of the local change queue
+     *
+     * @param change the committed change command
+     */
+    void onChangeCommitted(String change) {
+        if (change.trim().equals(localChanges.peekFirst())) localChanges.pollFirst();
+    }
+
+    /**
+     * Called whenever a group reaches a decision
+     *
+     * @param groupId the group that decided
+     * @param value the decided value
+     */
+    private void onGroupDecided(String groupId, String value) {
+        // log slots are committed once applied in order
+        if (!groupId.startsWith(SLOT_PREFIX)) onCommitted(groupId, value);
+
+        if (groupId.startsWith(CONFIG_GROUP_PREFIX)) {
+            try {
+                decidedConfigs.put(Integer.parseInt(groupId.substring(CONFIG_GROUP_PREFIX.length())), value);
+            } catch (NumberFormatException e) {
+                Logger.log("[onGroupDecided] Invalid config group: " + groupId);
+            }
+            applyDecidedConfigs();
+        }
+        if (groupId.startsWith(SLOT_PREFIX)) slotLog.applyLog();
+        checkCaughtUp();
+    }
+
+    /**
+     * Tells waiting clients, proposals and subscribers of a committed decision
+     *
+     * @param groupId the group that decided
+     * @param value the decided value
+     */
+    void onCommitted(String groupId, String value) {
+        List<Message> watchers = decisionWatchers.remove(groupId);
+        if (watchers != null) {
+            for (Message request : watchers) replyDecision(request, groupId, value);
+        }
+
+        List<CompletableFuture<String>> waiting = pendingProposals.remove(groupId);
+        if (waiting != null) waiting.forEach(future -> complete(future, value));
+
+        if (NO_OP.equals(value)) return;
+        for (BiConsumer<String, String> subscriber : subscribers) {
+            try {
+                subscriber.accept(groupId, value);
+            } catch (RuntimeException e) {
+                Logger.log("[onCommitted] Subscriber failed: " + e);
             }
-            case ACCEPT_REQUEST -> acceptor.onAcceptRequest(msg);
-            case PROMISE -> proposer.handlePromise(msg);
-            case ACCEPTED -> {
-                proposer.handleAccepted(msg);
-                learner.onAccepted(msg);
+        }
+    }
+
+    /**
+     * Applies decided membership changes at their committed point in epoch order
+     */
+    private void applyDecidedConfigs() {
+        int next = networkManager.getMembership().getEpoch() + 1;
+        String change;
+        boolean applied = false;
+        while ((change = decidedConfigs.remove(next)) != null) {
+            networkManager.applyMembershipChange(change);
+            applied = true;
+            catchUpIfDonor(change);
+            onChangeCommitted(change);
+            next++;
+        }
+        // a lost or pending local change is retried in the next epoch once this member votes in it
+        if (applied) takeOverState();
+    }
+
+    /**
+     * Brings a member added by a committed change up to date if this member is its donor
+     *
+     * @param change the committed change command
+     */
+    void catchUpIfDonor(String change) {
+        String[] parts = change.trim().split("\\s+");
+        if (parts[0].equalsIgnoreCase("ADD") && parts.length > 1 && isCatchUpDonor(parts[1])) {
+            catchUp(parts[1]);
+        }
+    }
+
+    /**
+     * The lowest id voter is responsible for bringing new members up to date
+     *
+     * @param newMember the member being added
+     * @return true if this member should send the catch-up
+     */
+    private boolean isCatchUpDonor(String newMember) {
+        for (String voter : networkManager.getMembership().getVoters()) {
+            if (!voter.equals(newMember)) return voter.equals(memberId);
+        }
+        return false;
+    }
+
+    /**
+     * Streams every decided value to a new member in the background followed by a SYNC marker
+     *
+     * @param target the new member
+     */
+    private void catchUp(String target) {
+        int snapshotEnd = mencius ? slotLog.snapshotEnd() : -1;
+        int sent = sendDecided(target);
+        Logger.log("[catchUp] Sent " + sent + " decided values to " + target);
+        networkManager.sendMessage(target, new Message(
+                Message.MessageType.SYNC, memberId, snapshotEnd >= 0 ? String.valueOf(snapshotEnd) : null, null,
+                String.valueOf(sent), null));
+    }
+
+    /**
+     * Sends every decided value to a member. Once the log has been truncated the applied slots are sent as a
+     * snapshot of the state they were applied to, with the membership changes committed in them
+     *
+     * @param target the member
+     * @return the number of decided values sent
+     */
+    int sendDecided(String target) {
+        int snapshotEnd = mencius ? slotLog.snapshotEnd() : -1;
+        if (snapshotEnd >= 0) slotLog.sendSnapshotState(target);
+        int sent = 0;
+        for (Map.Entry<String, PaxosGroup> e : groups.entrySet()) {
+            String value = e.getValue().getDecidedValue();
+            if (value == null) continue;
+            if (snapshotEnd >= 0 && e.getKey().startsWith(SLOT_PREFIX) && SlotLog.parseSlot(e.getKey()) < snapshotEnd) continue;
+            if (networkManager.sendMessage(target, new Message(
+                    Message.MessageType.LEARN, memberId, null, null, null, value, e.getKey()))) {
+                sent++;
             }
-            case LEARN -> learner.onDecide(msg.getAcceptedValue());
-            case VALUE -> this.initiateProposal(msg.getProposalValue());
-            default -> Logger.log("Unknown message type: " + msg.getType() + " - ignoring");
         }
+        return sent;
+    }
+
+    /**
+     * Subscribes the learner to the voter it picks as its feed source, moving when this member suspects it.
+     * Renewed every second so the subscription lapses at a source it moved away from
+     */
+    private void checkFeedSource() {
+        String source = networkManager.getFeedSource(memberId);
+        if (source.equals(memberId)) return;
+        if (!source.equals(feedSource)) {
+            feedSource = source;
+            Logger.log("[checkFeedSource] Following decisions from " + source);
+        }
+        networkManager.sendMessage(source, new Message(Message.MessageType.SUBSCRIBE, memberId, null, null, null, null));
+    }
+
+    /**
+     * Handles a learner's subscription - a new subscriber is sent everything decided so far, then every decision
+     *
+     * @param msg the SUBSCRIBE message
+     */
+    private void onSubscribe(Message msg) {
+        if (!networkManager.isVoter(memberId) || !networkManager.isLearner(msg.getSender())) return;
+        if (networkManager.subscribeLearner(msg.getSender())) {
+            Logger.log("[onSubscribe] Streaming decisions to learner " + msg.getSender());
+            catchUp(msg.getSender());
+        }
+    }
+
+    /**
+     * Handles the SYNC marker from the catch-up donor
+     *
+     * @param msg the SYNC message holding the number of decided values sent and the slot its snapshot ends at if any
+     */
+    private void onSync(Message msg) {
+        try {
+            syncTarget = Integer.parseInt(msg.getAcceptedNumber());
+            syncSlot = msg.getProposalNumber() != null ? Integer.parseInt(msg.getProposalNumber()) : -1;
+        } catch (NumberFormatException e) {
+            return;
+        }
+        syncDonor = msg.getSender();
+        checkCaughtUp();
+    }
+
+    /**
+     * Once a joining member has learned everything the donor sent it asks to be promoted to a voter
+     */
+    void checkCaughtUp() {
+        if (promoteRequested || syncTarget < 0 || networkManager.isVoter(memberId) || networkManager.isLearner(memberId)) return;
+
+        long decided = groups.values().stream().filter(PaxosGroup::isDecided).count() + slotLog.getTruncated();
+        if (decided < syncTarget || slotLog.getNextApply() < syncSlot) return;
+
+        promoteRequested = true;
+        Logger.log("[checkCaughtUp] Caught up with " + decided + " decided values - requesting promotion");
+        networkManager.sendMessage(syncDonor, new Message(
+                Message.MessageType.RECONFIG, memberId, null, "PROMOTE " + memberId, null, null));
+    }
+
+    /**
+     * @return true once this member's acceptors may vote in the current epoch
+     */
+    private boolean isStateTaken() {
+        return networkManager.getMembership().getEpoch() <= stateEpoch;
+    }
+
+    /**
+     * Called when the membership moved to a new epoch - before voting in it this member takes over the values
+     * accepted by a majority of the previous epoch's voters. The quorums of epochs further apart need not overlap,
+     * so a value only the removed members and a minority accepted would otherwise be lost
+     */
+    void takeOverState() {
+        Membership current = networkManager.getMembership();
+        int epoch = current.getEpoch();
+        if (epoch <= stateEpoch || epoch == transferEpoch) return;
+
+        transferEpoch = epoch;
+        stateSources.clear();
+        Membership previous = networkManager.getMembership(epoch - 1);
+        if (!current.countsToward(memberId) || previous == null) {
+            // a member not voting in the epoch has nothing to take over
+            if (previous == null) Logger.log("[takeOverState] Epoch " + (epoch - 1) + " is not known - voting in epoch " + epoch);
+            stateEpoch = epoch;
+            proposeNextChange();
+            return;
+        }
+        // this member's own acceptors stopped voting in the previous epoch when it moved on
+        if (previous.isVoter(memberId)) stateSources.add(memberId);
+        Logger.log("[takeOverState] Taking over the acceptor state of epoch " + (epoch - 1) + " from " + previous.getVoters());
+        requestState(epoch);
+    }
+
+    /**
+     * Asks the previous epoch's voters not heard from yet for their acceptor state, again every second until a
+     * majority has sent it
+     *
+     * @param epoch the epoch the state is taken over for
+     */
+    private void requestState(int epoch) {
+        if (epoch != transferEpoch || checkStateTaken()) return;
+        Message request = new Message(Message.MessageType.STATE_REQUEST, memberId, String.valueOf(epoch), null, null, null);
+        for (String voter : networkManager.getMembership(epoch - 1).getVoters()) {
+            if (!stateSources.contains(voter)) networkManager.sendMessage(voter, request);
+        }
+        scheduler.schedule(() -> eventLoop.execute(() -> requestState(epoch)), 1, TimeUnit.SECONDS);
+    }
+
+    /**
+     * @return true once a majority of the previous epoch's voters sent their acceptor state - the pending membership
+     * change is proposed then
+     */
+    private boolean checkStateTaken() {
+        if (stateEpoch >= transferEpoch) return true;
+        Membership previous = networkManager.getMembership(transferEpoch - 1);
+        long sources = stateSources.stream().filter(previous::isVoter).count();
+        if (sources < previous.quorumSize()) return false;
+
+        stateEpoch = transferEpoch;
+        Logger.log("[checkStateTaken] Took over the acceptor state from " + stateSources + " - voting in epoch " + stateEpoch);
+        proposeNextChange();
+        return true;
     }
 
     /**
-     * Called to start a new election/proposal round.
+     * Sends this member's acceptor state to a member of a later epoch. Only answered once this member is in that
+     * epoch too, so none of its acceptors votes in the previous epoch any more
+     *
+     * @param msg the STATE_REQUEST holding the epoch the state is taken over for
      */
-    public void initiateProposal(String candidateName) {
-        Logger.log("[initiateProposal] Node " + memberId + " initiating proposal for: " + candidateName);
-        proposer.prepare(candidateName);
+    private void onStateRequest(Message msg) {
+        int epoch;
+        try {
+            epoch = Integer.parseInt(msg.getProposalNumber());
+        } catch (NumberFormatException e) {
+            return;
+        }
+        if (networkManager.getMembership().getEpoch() < epoch) return;
+
+        Map<String, String> accepted = new HashMap<>();
+        for (Map.Entry<String, PaxosGroup> e : groups.entrySet()) {
+            PaxosGroup group = e.getValue();
+            if (e.getKey().startsWith(SLOT_PREFIX) || group.getAcceptedNumber() == null || group.getAcceptedValue() == null) continue;
+            Map<String, String> fields = new HashMap<>();
+            fields.put("number", String.valueOf(group.getAcceptedNumber()));
+            fields.put("value", group.getAcceptedValue());
+            accepted.put(e.getKey(), SimpleJsonUtil.stringify(fields));
+        }
+        networkManager.sendMessage(msg.getSender(), new Message(Message.MessageType.STATE, memberId, msg.getProposalNumber(),
+                SimpleJsonUtil.stringify(accepted), null, SimpleJsonUtil.stringify(casAcceptor.acceptedState())));
     }
 
     /**
-     *  Starts a thread that ensures that a value is chosen even if a member crashes or a proposal fails
+     * Takes over the acceptor state a voter of the previous epoch sent - for every group and register the value
+     * accepted in the highest ballot is kept
+     *
+     * @param msg the STATE message holding the accepted values of the groups and of the registers
      */
-    public void retryHandler() {
-        synchronized (retryActive) {
-            if (retryActive.get()) return;
-            retryActive.set(true);
+    private void onState(Message msg) {
+        int epoch;
+        Map<String, String> accepted;
+        Map<String, String> registers;
+        try {
+            epoch = Integer.parseInt(msg.getProposalNumber());
+            accepted = SimpleJsonUtil.parse(msg.getProposalValue());
+            registers = SimpleJsonUtil.parse(msg.getAcceptedValue());
+        } catch (RuntimeException e) {
+            Logger.log("[onState] Ignoring invalid state from " + msg.getSender());
+            return;
+        }
+        if (epoch != transferEpoch || stateEpoch >= epoch || stateSources.contains(msg.getSender()) ||
+                !networkManager.getMembership(epoch - 1).isVoter(msg.getSender())) {
+            return;
         }
 
-        scheduler.schedule(() -> {
-            synchronized (retryActive) {
-                if (!learner.isDecided()) {
-                    Logger.log("Timeout Reached: proposing a new value using last accepted proposal message");
-                    proposer.prepare(memberId);
-                }
-                retryActive.set(false);
+        accepted.forEach((groupId, group) -> {
+            if (groupId.startsWith(SLOT_PREFIX) || !isKnownGroup(groupId)) return;
+            Map<String, String> fields = SimpleJsonUtil.parse(group);
+            try {
+                getGroup(groupId).adopt(Integer.parseInt(fields.get("number")), fields.get("value"));
+            } catch (NumberFormatException e) {
+                Logger.log("[onState] Ignoring invalid state of group " + groupId + " from " + msg.getSender());
             }
-        }, RETRY_TIMEOUT + ThreadLocalRandom.current().nextInt(1000), TimeUnit.MILLISECONDS);
+        });
+        registers.forEach(casAcceptor::adopt);
+        stateSources.add(msg.getSender());
+        checkStateTaken();
     }
 
     /**
@@ -105,5 +925,12 @@ public class Paxos {
      */
     public void killPaxosNode(){
         this.networkManager.stopServer();
+        scheduler.shutdownNow();
+        eventLoop.stop();
+    }
+
+    @Override
+    public void close() {
+        killPaxosNode();
     }
 }
@@ -0,0 +1,170 @@
+package com.paxos;
+
+import com.paxos.tools.ProfileManager;
+
+import java.net.InetSocketAddress;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Options for starting an embedded Paxos member.
+ * Members are read from the config file unless they are added in code with {@link #member}.
+ */
+public class PaxosConfig {
+    private final String memberId;
+    private ProfileManager.MemberProfile profile = ProfileManager.MemberProfile.STANDARD;
+    private String configPath = "./cluster.conf";
+    private Map<String, InetSocketAddress> members = null;
+    private final Set<String> learners = new TreeSet<>();
+    private boolean fastPaxos = false;
+    private int groupCount = 1;
+    private boolean joining = false;
+    private boolean mencius = false;
+    private String sharedMemoryDir = null;
+    private long proposeTimeoutMs = 10_000;
+
+    public PaxosConfig(String memberId) {
+        this.memberId = memberId;
+    }
+
+    /**
+     * @param profile the network/failure profile to simulate
+     */
+    public PaxosConfig profile(ProfileManager.MemberProfile profile) {
+        this.profile = profile;
+        return this;
+    }
+
+    /**
+     * @param configPath path of the cluster config file - ignored once members are added in code
+     */
+    public PaxosConfig configPath(String configPath) {
+        this.configPath = configPath;
+        return this;
+    }
+
+    /**
+     * Adds a cluster member in code instead of reading the config file - this member must be included
+     *
+     * @param id the member id
+     * @param host the member host
+     * @param port the member port
+     */
+    public PaxosConfig member(String id, String host, int port) {
+        if (members == null) members = new LinkedHashMap<>();
+        members.put(id, new InetSocketAddress(host, port));
+        return this;
+    }
+
+    /**
+     * Adds a non-voting learner in code - it is streamed decisions but never counts toward quorums
+     *
+     * @param id the learner id
+     * @param host the learner host
+     * @param port the learner port
+     */
+    public PaxosConfig learner(String id, String host, int port) {
+        learners.add(id);
+        return member(id, host, port);
+    }
+
+    /**
+     * @param fastPaxos true to use the Fast Paxos round
+     */
+    public PaxosConfig fastPaxos(boolean fastPaxos) {
+        this.fastPaxos = fastPaxos;
+        return this;
+    }
+
+    /**
+     * @param groupCount the number of consensus groups (shards) values are partitioned over
+     */
+    public PaxosConfig groups(int groupCount) {
+        this.groupCount = groupCount;
+        return this;
+    }
+
+    /**
+     * @param joining true if the member is joining a running cluster and must catch up before voting
+     */
+    public PaxosConfig joining(boolean joining) {
+        this.joining = joining;
+        return this;
+    }
+
+    /**
+     * @param mencius true to use rotating slot ownership
+     */
+    public PaxosConfig mencius(boolean mencius) {
+        this.mencius = mencius;
+        return this;
+    }
+
+    /**
+     * @param sharedMemoryDir directory shared by members on this host for shared memory rings - null to only use TCP
+     */
+    public PaxosConfig sharedMemory(String sharedMemoryDir) {
+        this.sharedMemoryDir = sharedMemoryDir;
+        return this;
+    }
+
+    /**
+     * @param proposeTimeoutMs ms a proposal may wait for its decision before its future fails with a TimeoutException
+     */
+    public PaxosConfig proposeTimeout(long proposeTimeoutMs) {
+        this.proposeTimeoutMs = proposeTimeoutMs;
+        return this;
+    }
+
+    public String getMemberId() {
+        return memberId;
+    }
+
+    public ProfileManager.MemberProfile getProfile() {
+        return profile;
+    }
+
+    public String getConfigPath() {
+        return configPath;
+    }
+
+    /**
+     * @return the members added in code or null if they are read from the config file
+     */
+    public Map<String, InetSocketAddress> getMembers() {
+        return members;
+    }
+
+    /**
+     * @return ids of the members added in code as learners
+     */
+    public Set<String> getLearners() {
+        return learners;
+    }
+
+    public boolean isFastPaxos() {
+        return fastPaxos;
+    }
+
+    public int getGroupCount() {
+        return groupCount;
+    }
+
+    public boolean isJoining() {
+        return joining;
+    }
+
+    public boolean isMencius() {
+        return mencius;
+    }
+
+    public String getSharedMemoryDir() {
+        return sharedMemoryDir;
+    }
+
+    public long getProposeTimeoutMs() {
+        return proposeTimeoutMs;
+    }
+}
@@ -0,0 +1,218 @@
+package com.paxos;
+
+import com.paxos.roles.Acceptor;
+import com.paxos.roles.Learner;
+import com.paxos.roles.Proposer;
+import com.paxos.tools.Logger;
+import com.paxos.tools.Membership;
+import com.paxos.tools.Message;
+import com.paxos.tools.NetworkManager;
+import com.paxos.tools.TraceEvents;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+import java.util.function.BooleanSupplier;
+import java.util.function.IntFunction;
+import java.util.function.Supplier;
+
+/**
+ * A single independent consensus group - holds its own set of Paxos roles.
+ * Only used from the member's event loop so none of its state is locked.
+ */
+public class PaxosGroup {
+    private final String memberId;
+    private final String groupId;
+    private final Supplier<String> owner; // owner of the log slot - null if the group is not a slot
+    private final Supplier<Membership> config; // configuration the group's ballots are in - null if not known yet
+    private final BooleanSupplier stateTaken; // false while the acceptor state of the previous configuration is taken over
+    private final boolean fastPaxos;
+    private final NetworkManager networkManager;
+
+    // Paxos roles
+    private final Acceptor acceptor;
+    private final Learner learner;
+    private final Proposer proposer;
+
+    // Recovery Handling
+    private final ScheduledExecutorService scheduler;
+    private final Executor eventLoop;
+    private final int RETRY_TIMEOUT = 5000; // 5 second
+    private boolean retryActive = false;
+    private int timeoutsSeen = 0;
+
+    PaxosGroup(String memberId, String groupId, Supplier<String> owner, Supplier<Membership> config, BooleanSupplier stateTaken,
+               NetworkManager networkManager, ScheduledExecutorService scheduler, Executor eventLoop, boolean fastPaxos,
+               BiConsumer<String, String> decisionListener) {
+        this.memberId = memberId;
+        this.groupId = groupId;
+        this.owner = owner;
+        this.config = config;
+        this.stateTaken = stateTaken;
+        this.networkManager = networkManager;
+        this.scheduler = scheduler;
+        this.eventLoop = eventLoop;
+        this.fastPaxos = fastPaxos;
+
+        // init roles - quorums are those of the configuration each ballot is tagged with
+        String stateFile = Paxos.DEFAULT_GROUP.equals(groupId) ? memberId : memberId + "-" + groupId;
+        this.acceptor = new Acceptor(memberId, groupId, networkManager, "./" + stateFile + ".save");
+        this.learner = new Learner(memberId, groupId, networkManager, this::configIn, value -> decisionListener.accept(groupId, value));
+        this.proposer = new Proposer(memberId, groupId, networkManager, config, this::onMessage);
+    }
+
+    /**
+     * @param epoch the epoch of a ballot
+     * @return the group's configuration in the epoch or null if not known - a slot is only ever in one configuration
+     * while any other group is in the membership of the epoch
+     */
+    private Membership configIn(int epoch) {
+        if (owner == null) return networkManager.getMembership(epoch);
+        Membership current = config.get();
+        return current != null && current.getEpoch() == epoch ? current : null;
+    }
+
+    /**
+     * @param msg a PREPARE or ACCEPT_REQUEST
+     * @return true if this member votes in the message's ballot - only a member whose votes count in the configuration
+     * the group is in and only for ballots of that configuration's epoch. A slot too far ahead for its configuration
+     * to be known yet is voted on as its proposer knows it, the votes are only counted by members that know it too.
+     * No votes are cast in a new epoch until the values accepted in the previous one are taken over
+     */
+    private boolean votesIn(Message msg) {
+        Membership current = config.get();
+        if (current == null) return owner != null;
+        return current.countsToward(memberId) && String.valueOf(current.getEpoch()).equals(msg.getEpoch()) &&
+                stateTaken.getAsBoolean();
+    }
+
+    /**
+     * Routes each incoming message for this group to the correct Paxos role based on its type.
+     * The member's own proposals are handed to its acceptor here too and the acceptor's votes are counted locally,
+     * as broadcasts only reach the other members
+     */
+    public void onMessage(Message msg) {
+        switch (msg.getType()) {
+            case PREPARE -> {
+                // members still catching up only learn
+                if (!votesIn(msg)) return;
+                retryHandler();
+                Message promise = acceptor.onPrepare(msg);
+                if (promise != null && memberId.equals(msg.getSender())) proposer.handlePromise(promise);
+            }
+            case ACCEPT_REQUEST -> {
+                if (!votesIn(msg)) return;
+                // fast round skips PREPARE so the retry timer must be started here
+                if (String.valueOf(Proposer.FAST_BALLOT).equals(msg.getProposalNumber())) retryHandler();
+                Message accepted = acceptor.onAcceptRequest(msg);
+                if (accepted != null) onMessage(accepted);
+            }
+            case PROMISE -> proposer.handlePromise(msg);
+            case ACCEPTED -> {
+                proposer.handleAccepted(msg);
+                learner.onAccepted(msg);
+            }
+            case LEARN -> learner.onLearn(msg);
+            case VALUE -> this.initiateProposal(msg.getProposalValue());
+            default -> Logger.log("Unknown message type: " + msg.getType() + " - ignoring");
+        }
+    }
+
+    /**
+     * Called to start a new election/proposal round in this group.
+     *
+     * @return false if the proposal was rejected due to backpressure
+     */
+    public boolean initiateProposal(String candidateName) {
+        Logger.log("[initiateProposal] Node " + memberId + " initiating proposal in group " + groupId + " for: " + candidateName);
+        if (fastPaxos) {
+            if (!proposer.fastPropose(candidateName)) return false;
+            retryHandler();
+            return true;
+        }
+        // retried even if this member's own acceptor does not vote e.g. while it takes over the previous epoch's state
+        if (!proposer.prepare(candidateName)) return false;
+        retryHandler();
+        return true;
+    }
+
+    /**
+     * Proposes a value in this log slot as its owner - phase 2 only
+     *
+     * @return false if the proposal was rejected due to backpressure
+     */
+    public boolean ownerPropose(String value) {
+        Logger.log("[ownerPropose] Node " + memberId + " proposing in " + groupId + " for: " + value);
+        return proposer.ownerPropose(value);
+    }
+
+    /**
+     * Learns the no-op for this log slot as its owner skipped it
+     */
+    public void skip() {
+        learner.onSkip(Paxos.NO_OP);
+    }
+
+    /**
+     *  Starts a timer that ensures that a value is chosen even if a member crashes or a proposal fails.
+     *  Only one member retries per timeout so members do not all propose at once - the leader (or for a log
+     *  slot its owner, so the next member once the owner is suspected) goes first and each further timeout
+     *  moves the turn to the next unsuspected voter. A stalled slot is revoked by proposing a no-op.
+     */
+    public void retryHandler() {
+        if (retryActive) return;
+        retryActive = true;
+
+        // the timer only posts back to the event loop, the retry itself runs there
+        scheduler.schedule(() -> eventLoop.execute(this::onRetryTimeout),
+                RETRY_TIMEOUT + ThreadLocalRandom.current().nextInt(1000), TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Runs when the retry timer fires
+     */
+    private void onRetryTimeout() {
+        retryActive = false;
+        if (learner.isDecided()) return;
+
+        // a slot's owner is looked up when needed as it is only known once the log is applied far enough
+        String start = owner != null ? owner.get() : null;
+        String retryProposer = networkManager.getRetryProposer(start != null ? start : networkManager.getLeader(), timeoutsSeen++);
+        TraceEvents.retryFired(memberId, groupId, timeoutsSeen, proposer.getBallot(), retryProposer);
+        if (memberId.equals(retryProposer)) {
+            Logger.log("Timeout Reached: proposing a new value using last accepted proposal message");
+            proposer.prepare(owner != null ? Paxos.NO_OP : memberId);
+        } else {
+            Logger.log("Timeout Reached: waiting for " + (timeoutsSeen == 1 ? "leader " : "") + retryProposer + " to retry");
+        }
+        retryHandler();
+    }
+
+    /**
+     * @return the ballot of the value this member's acceptor accepted or null if none
+     */
+    public Integer getAcceptedNumber() {
+        return acceptor.acceptedNumber;
+    }
+
+    public String getAcceptedValue() {
+        return acceptor.acceptedValue;
+    }
+
+    /**
+     * Takes over a value a member of the previous configuration accepted if newer than the one accepted here
+     */
+    public void adopt(int number, String value) {
+        acceptor.adopt(number, value);
+    }
+
+    public boolean isDecided() {
+        return learner.isDecided();
+    }
+
+    public String getDecidedValue() {
+        return learner.getDecidedValue();
+    }
+}
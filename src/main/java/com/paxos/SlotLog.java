@@ -0,0 +1,520 @@
+package com.paxos;
+
+import com.paxos.tools.Logger;
+import com.paxos.tools.Membership;
+import com.paxos.tools.Message;
+import com.paxos.tools.NetworkManager;
+import com.paxos.tools.SimpleJsonUtil;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * The rotating owner (Mencius) log - slots are groups slot-0, slot-1... owned round-robin by the voters of the
+ * membership they are decided in. Tracks slot ownership and skips, applies decided slots in log order to the state
+ * machine, truncates applied slots and hands snapshots to members behind the log.
+ * Only used from the member's event loop so none of its state is locked.
+ */
+class SlotLog {
+    private static final int RETAINED_SLOTS = 1024; // applied slot groups kept for members still deciding them
+    private static final int MAX_SLOT_LEAD = 4 * RETAINED_SLOTS; // messages for slots further ahead are dropped
+    private static final int MAX_DEFERRED_SKIPS = 64;
+    private static final long SNAPSHOT_INTERVAL = 5000; // ms between snapshots sent to a member behind the log
+
+    private final String memberId;
+    private final Paxos paxos;
+    private final Map<String, PaxosGroup> groups; // the member's groups - slots are created through Paxos.getGroup
+    private final NetworkManager networkManager;
+    private final StateMachine stateMachine;
+    private final ScheduledExecutorService scheduler;
+    private final Executor eventLoop;
+
+    // Rotating slot ownership - every own slot below a slot seen from another member is skipped
+    private int nextOwnSlot = 0;
+    private int highestSlotSeen = -1;
+    private int nextApply = 0;
+    private int revokedUpTo = 0; // slots of a suspected owner below it have their retry timer started
+    private boolean applying = false;
+    // membership from each start slot on - a change committed in slot s takes effect from slot s + SLOT_WINDOW
+    private final TreeMap<Integer, SlotRange> slotRanges = new TreeMap<>();
+    // SKIPs of slots beyond the window, the owners are checked once the log gets there
+    private final Deque<Skip> deferredSkips = new ArrayDeque<>();
+    private String configSlot = null; // slot the head of the local change queue was proposed in
+
+    // Applied slots below logStart are dropped - the log's membership changes are kept to send with the snapshot
+    private int logStart = 0;
+    private int truncated = 0; // decided groups dropped, still counted when catching up
+    private final TreeMap<Integer, String> logConfigs = new TreeMap<>();
+    private final Map<String, Long> snapshotsSent = new HashMap<>();
+
+    /**
+     * The membership a range of log slots is decided in - its voters own the slots round-robin in id order
+     */
+    private static final class SlotRange {
+        final Membership membership;
+        final String change; // the change the range starts with - null for the initial range
+        final String[] owners;
+        final int ownIndex; // index of this member in the owners or -1 if it owns none of the slots
+
+        SlotRange(Membership membership, String change, String memberId) {
+            this.membership = membership;
+            this.change = change;
+            this.owners = membership.getVoters().toArray(new String[0]);
+            int index = -1;
+            for (int i = 0; i < owners.length; i++) {
+                if (owners[i].equals(memberId)) index = i;
+            }
+            this.ownIndex = index;
+        }
+    }
+
+    /**
+     * A range of another member's slots it skipped [from, to)
+     */
+    private static final class Skip {
+        final String owner;
+        final int to;
+        int from;
+
+        Skip(String owner, int from, int to) {
+            this.owner = owner;
+            this.from = from;
+            this.to = to;
+        }
+    }
+
+    SlotLog(String memberId, Paxos paxos, Map<String, PaxosGroup> groups, NetworkManager networkManager,
+            StateMachine stateMachine, ScheduledExecutorService scheduler, Executor eventLoop) {
+        this.memberId = memberId;
+        this.paxos = paxos;
+        this.groups = groups;
+        this.networkManager = networkManager;
+        this.stateMachine = stateMachine;
+        this.scheduler = scheduler;
+        this.eventLoop = eventLoop;
+        this.slotRanges.put(0, new SlotRange(networkManager.getMembership(), null, memberId));
+    }
+
+    /**
+     * Proposes a value in the next log slot owned by this member - the owner goes straight to phase 2
+     *
+     * @param value the value to propose
+     * @return id of the slot's group or null if the proposal was not started
+     */
+    String proposeInOwnSlot(String value) {
+        if (value == null || value.startsWith(Paxos.CONFIG_PREFIX)) {
+            Logger.log("[proposeInOwnSlot] Membership changes are proposed with RECONFIG - dropping proposal for " + value);
+            return null;
+        }
+        return proposeInNextSlot(value);
+    }
+
+    /**
+     * Proposes a membership change in this member's next slot, tried again every second while the window is full
+     *
+     * @param change the change command
+     * @return false if this member owns no slots to propose it in
+     */
+    boolean proposeChange(String change) {
+        if (configSlot != null) return true;
+        if (nextOwnedSlot(Math.max(nextOwnSlot, nextApply)) < 0) return false;
+
+        Logger.log("[proposeNextChange] Proposing membership change '" + change + "' in the log");
+        configSlot = proposeInNextSlot(Paxos.CONFIG_PREFIX + change);
+        if (configSlot == null) {
+            // the window is full - tried again once the log has moved on
+            scheduler.schedule(() -> eventLoop.execute(paxos::proposeNextChange), 1, TimeUnit.SECONDS);
+        }
+        return true;
+    }
+
+    /**
+     * @param value the value or membership change to propose
+     * @return id of the slot's group or null if the proposal was not started
+     */
+    private String proposeInNextSlot(String value) {
+        // never leave an own slot below one already in use unskipped
+        skipOwnSlotsBelow(highestSlotSeen + 1);
+        int slot = nextOwnedSlot(Math.max(nextOwnSlot, nextApply));
+        if (slot < 0) {
+            Logger.log("[proposeInNextSlot] Owns no slots - dropping proposal for " + value);
+            return null;
+        }
+        if (slot >= horizon()) {
+            Logger.log("[proposeInNextSlot] Slot " + slot + " is beyond the log window - rejecting proposal for " + value);
+            return null;
+        }
+        nextOwnSlot = slot + 1;
+        highestSlotSeen = Math.max(highestSlotSeen, slot);
+        if (!paxos.getGroup(Paxos.SLOT_PREFIX + slot).ownerPropose(value)) {
+            // rejected due to backpressure - give the slot up straight away
+            skipOwnSlotsBelow(slot + 1);
+            return null;
+        }
+        return Paxos.SLOT_PREFIX + slot;
+    }
+
+    /**
+     * @return false if a message for the slot is dropped - too far ahead of this member's log to be in use, or
+     * truncated in which case a sender trying to decide it is sent a snapshot
+     */
+    boolean inLog(int slot, Message msg) {
+        if (slot < 0 || slot >= nextApply + MAX_SLOT_LEAD) return false;
+        if (slot >= logStart) return true;
+        if (msg.getType() == Message.MessageType.PREPARE) sendSnapshot(msg.getSender());
+        return false;
+    }
+
+    /**
+     * Tracks the highest slot in use - own slots below a slot proposed by another member are skipped
+     *
+     * @param slot the slot a message was seen for
+     * @param sender the member that sent it
+     */
+    void observeSlot(int slot, String sender) {
+        if (slot > highestSlotSeen) highestSlotSeen = slot;
+        if (sender != null && !sender.equals(memberId)) skipOwnSlotsBelow(slot);
+        checkLogProgress();
+    }
+
+    /**
+     * Skips every unused own slot below the limit, learning the no-op locally and telling the others with one SKIP.
+     * Slots beyond the window are left as their owners are not known yet
+     *
+     * @param limit the first slot that is not skipped
+     */
+    private void skipOwnSlotsBelow(int limit) {
+        limit = Math.min(limit, horizon());
+        int from = nextOwnedSlot(Math.max(nextOwnSlot, nextApply));
+        if (from < 0 || from >= limit) return;
+
+        for (int slot = from; slot < limit; slot++) {
+            if (memberId.equals(slotOwner(slot))) paxos.getGroup(Paxos.SLOT_PREFIX + slot).skip();
+        }
+        nextOwnSlot = limit;
+        networkManager.broadcast(new Message(Message.MessageType.SKIP, memberId, String.valueOf(from), null,
+                String.valueOf(limit), null));
+    }
+
+    /**
+     * Handles a SKIP - the sender's slots in the range are decided as no-ops, those beyond the window once the
+     * log gets there
+     *
+     * @param msg the SKIP message holding the slot range [from, to)
+     */
+    void onSkip(Message msg) {
+        int from, to;
+        try {
+            from = Integer.parseInt(msg.getProposalNumber());
+            to = Integer.parseInt(msg.getAcceptedNumber());
+        } catch (NumberFormatException e) {
+            return;
+        }
+        if (from < 0 || to <= from || msg.getSender() == null) return;
+
+        if (deferredSkips.size() == MAX_DEFERRED_SKIPS) deferredSkips.pollFirst();
+        deferredSkips.addLast(new Skip(msg.getSender(), from, to));
+        applyLog();
+        // the sender skipped because slot 'to' is in use
+        if (to < nextApply + MAX_SLOT_LEAD) observeSlot(to, msg.getSender());
+    }
+
+    /**
+     * Decides the skipped slots that are now within the window as no-ops - if the sender owns them
+     */
+    private void skipDeferred() {
+        int horizon = horizon();
+        for (Iterator<Skip> it = deferredSkips.iterator(); it.hasNext(); ) {
+            Skip skip = it.next();
+            if (skip.from >= horizon) continue;
+            int to = Math.min(skip.to, horizon);
+            for (int slot = Math.max(skip.from, nextApply); slot < to; slot++) {
+                if (skip.owner.equals(slotOwner(slot))) paxos.getGroup(Paxos.SLOT_PREFIX + slot).skip();
+            }
+            if (to == skip.to) it.remove();
+            else skip.from = to;
+        }
+    }
+
+    /**
+     * Applies decided slots strictly in log order, a gap holds back everything after it.
+     * Slots decided while applying (e.g. skips now within the window) are applied by the same call
+     */
+    void applyLog() {
+        if (applying) return;
+        applying = true;
+        try {
+            do {
+                skipDeferred();
+            } while (applyDecided());
+            truncateLog();
+        } finally {
+            applying = false;
+        }
+        checkLogProgress();
+    }
+
+    /**
+     * Applies the run of decided slots at the head of the log - to the state machine as one batch before any of
+     * them is reported
+     *
+     * @return true if any slot was applied
+     */
+    private boolean applyDecided() {
+        List<String> batch = new ArrayList<>();
+        PaxosGroup group;
+        while ((group = groups.get(Paxos.SLOT_PREFIX + (nextApply + batch.size()))) != null && group.isDecided()) {
+            batch.add(group.getDecidedValue());
+        }
+        if (batch.isEmpty()) return false;
+        stateMachine.apply(batch);
+
+        boolean changeDone = false;
+        List<String> activated = new ArrayList<>();
+        for (String value : batch) {
+            String groupId = Paxos.SLOT_PREFIX + nextApply;
+            if (value != null && value.startsWith(Paxos.CONFIG_PREFIX)) applyLogConfig(nextApply, value.substring(Paxos.CONFIG_PREFIX.length()));
+            else if (!Paxos.NO_OP.equals(value)) Logger.log("[applyLog] Slot " + nextApply + " applied: " + value);
+            if (groupId.equals(configSlot)) {
+                configSlot = null;
+                changeDone = true;
+            }
+            paxos.onCommitted(groupId, value);
+            nextApply++;
+
+            SlotRange range = slotRanges.get(nextApply);
+            if (range != null) {
+                networkManager.setMembership(range.membership);
+                activated.add(range.change);
+            }
+        }
+        if (!activated.isEmpty()) paxos.takeOverState();
+        // added members are caught up once the whole batch is applied so the snapshot matches the log position
+        activated.forEach(paxos::catchUpIfDonor);
+        // the next local change, or the same again if its slot was revoked
+        if (changeDone) paxos.proposeNextChange();
+        return true;
+    }
+
+    /**
+     * Schedules a membership change committed in the log - own slots up to where it takes effect are skipped so the
+     * log gets there without waiting for proposals
+     *
+     * @param slot the slot it was committed in
+     * @param change the change command
+     */
+    private void applyLogConfig(int slot, String change) {
+        Logger.log("[applyLog] Slot " + slot + " applied membership change '" + change + "' - takes effect from slot " +
+                (slot + Paxos.SLOT_WINDOW));
+        recordLogConfig(slot, change);
+        skipOwnSlotsBelow(slot + Paxos.SLOT_WINDOW);
+    }
+
+    /**
+     * Records a membership change committed in the log - it takes effect one window after its own slot
+     */
+    private void recordLogConfig(int slot, String change) {
+        Membership current = slotRanges.lastEntry().getValue().membership;
+        Membership next = current.apply(change);
+        if (next == null) {
+            Logger.log("[recordLogConfig] Ignoring invalid change: " + change);
+            next = current.advance();
+        }
+        // a slot is only ever in the configuration of its range so its quorums need no joint majority
+        slotRanges.put(slot + Paxos.SLOT_WINDOW, new SlotRange(next.settled(), change, memberId));
+        logConfigs.put(slot, change);
+        paxos.onChangeCommitted(change);
+    }
+
+    /**
+     * Drops the groups of applied slots once more than RETAINED_SLOTS are held
+     */
+    private void truncateLog() {
+        while (nextApply - logStart > RETAINED_SLOTS) {
+            if (groups.remove(Paxos.SLOT_PREFIX + logStart) != null) truncated++;
+            logStart++;
+        }
+    }
+
+    /**
+     * Starts the retry timer of the first undecided slot once a later slot is in use,
+     * so the slot of a crashed owner is eventually revoked
+     */
+    private void checkLogProgress() {
+        if (nextApply > highestSlotSeen || networkManager.isLearner(memberId)) return;
+        PaxosGroup group = paxos.getGroup(Paxos.SLOT_PREFIX + nextApply);
+        if (group.isDecided()) return;
+        group.retryHandler();
+
+        // the later slots in use of suspected owners are revoked together rather than one retry timeout after another
+        String owner = slotOwner(nextApply);
+        if (owner == null || !networkManager.isSuspected(owner)) return;
+        int limit = Math.min(highestSlotSeen + 1, horizon());
+        for (int slot = Math.max(nextApply + 1, revokedUpTo); slot < limit; slot++) {
+            String slotOwner = slotOwner(slot);
+            if (slotOwner == null || !networkManager.isSuspected(slotOwner)) continue;
+            PaxosGroup owned = paxos.getGroup(Paxos.SLOT_PREFIX + slot);
+            if (!owned.isDecided()) owned.retryHandler();
+        }
+        revokedUpTo = Math.max(revokedUpTo, limit);
+    }
+
+    /**
+     * @return the first slot whose owner may not be known yet - a change in a slot not applied could reassign it
+     */
+    private int horizon() {
+        return nextApply + Paxos.SLOT_WINDOW;
+    }
+
+    /**
+     * @param slot the log slot
+     * @return the voter owning the slot - slots are assigned round-robin in voter id order of the slot's range
+     */
+    String slotOwner(int slot) {
+        String[] owners = slotRanges.floorEntry(slot).getValue().owners;
+        return owners.length == 0 ? null : owners[Math.floorMod(slot, owners.length)];
+    }
+
+    /**
+     * @return looks up the configuration the slot's ballots are in when asked - the one of its range, only known once
+     * the log is applied to within SLOT_WINDOW of it
+     */
+    Supplier<Membership> configOf(int slot) {
+        return () -> slot < horizon() ? slotRanges.floorEntry(slot).getValue().membership : null;
+    }
+
+    /**
+     * @param from the first slot to consider
+     * @return the first slot at or after {@code from} owned by this member or -1 if it owns no later slot
+     */
+    private int nextOwnedSlot(int from) {
+        Map.Entry<Integer, SlotRange> range = slotRanges.floorEntry(from);
+        while (range != null) {
+            Integer end = slotRanges.higherKey(range.getKey());
+            SlotRange owners = range.getValue();
+            if (owners.ownIndex >= 0) {
+                int start = Math.max(from, range.getKey());
+                int slot = start + Math.floorMod(owners.ownIndex - start, owners.owners.length);
+                if (end == null || slot < end) return slot;
+            }
+            range = end != null ? slotRanges.floorEntry(end) : null;
+        }
+        return -1;
+    }
+
+    /**
+     * @return the first slot not applied yet
+     */
+    int getNextApply() {
+        return nextApply;
+    }
+
+    /**
+     * @return the number of decided slot groups dropped by truncation
+     */
+    int getTruncated() {
+        return truncated;
+    }
+
+    /**
+     * @return the first slot after the snapshot a member being caught up is sent, -1 while the log has not been
+     * truncated so every slot is still sent on its own
+     */
+    int snapshotEnd() {
+        return logStart > 0 ? nextApply : -1;
+    }
+
+    /**
+     * Sends the state the applied slots were applied to, with the membership changes committed in them
+     *
+     * @param target the member being caught up
+     */
+    void sendSnapshotState(String target) {
+        Map<String, String> configs = new HashMap<>();
+        logConfigs.headMap(nextApply).forEach((slot, change) -> configs.put(String.valueOf(slot), change));
+        // waits for the batches still being applied - the snapshot must go out before the slots sent after it
+        Map<String, String> state = stateMachine.snapshot().join();
+        networkManager.sendMessage(target, new Message(Message.MessageType.SNAPSHOT, memberId,
+                String.valueOf(nextApply), SimpleJsonUtil.stringify(state), null, SimpleJsonUtil.stringify(configs)));
+    }
+
+    /**
+     * Sends a snapshot to a member trying to decide a truncated slot - it is too far behind to catch up slot by slot
+     *
+     * @param target the member behind the log
+     */
+    private void sendSnapshot(String target) {
+        long now = System.currentTimeMillis();
+        Long last = snapshotsSent.get(target);
+        if (target == null || target.equals(memberId) || (last != null && now - last < SNAPSHOT_INTERVAL)) return;
+        snapshotsSent.put(target, now);
+        Logger.log("[sendSnapshot] " + target + " is behind the truncated log - sending a snapshot");
+        paxos.sendDecided(target);
+    }
+
+    /**
+     * Handles a snapshot of the log up to a slot this member has not applied yet - the membership changes committed
+     * in the slots it covers are applied in slot order, the state is taken over and the log continues after it
+     *
+     * @param msg the SNAPSHOT message holding the first slot after it, the state and the membership changes
+     */
+    void onSnapshot(Message msg) {
+        int slot;
+        Map<Integer, String> configs = new TreeMap<>();
+        try {
+            slot = Integer.parseInt(msg.getProposalNumber());
+            SimpleJsonUtil.parse(msg.getAcceptedValue()).forEach((s, change) -> configs.put(Integer.parseInt(s), change));
+        } catch (RuntimeException e) {
+            Logger.log("[onSnapshot] Ignoring invalid snapshot from " + msg.getSender());
+            return;
+        }
+        if (slot <= nextApply || msg.getProposalValue() == null) return;
+
+        Logger.log("[onSnapshot] Taking over the log up to slot " + slot + " from " + msg.getSender());
+        configs.forEach((s, change) -> {
+            if (s >= nextApply && s < slot) recordLogConfig(s, change);
+        });
+        // every range is switched to in order so the epoch history stays complete for taking over state
+        int epoch = networkManager.getMembership().getEpoch();
+        for (SlotRange range : slotRanges.headMap(slot, true).values()) {
+            if (range.membership.getEpoch() > epoch) networkManager.setMembership(range.membership);
+        }
+        paxos.takeOverState();
+        stateMachine.restore(SimpleJsonUtil.parse(msg.getProposalValue()));
+        groups.keySet().removeIf(id -> id.startsWith(Paxos.SLOT_PREFIX) && parseSlot(id) < slot);
+        deferredSkips.removeIf(skip -> skip.to <= slot);
+        nextApply = slot;
+        logStart = slot;
+        nextOwnSlot = Math.max(nextOwnSlot, slot);
+        highestSlotSeen = Math.max(highestSlotSeen, slot - 1);
+        if (configSlot != null && parseSlot(configSlot) < slot) {
+            // the local change's slot is covered by the snapshot - proposed again unless it was committed
+            configSlot = null;
+            paxos.proposeNextChange();
+        }
+        applyLog();
+        paxos.checkCaughtUp();
+    }
+
+    /**
+     * @param groupId a group id starting with {@link Paxos#SLOT_PREFIX}
+     * @return the slot number or -1 if the id holds none
+     */
+    static int parseSlot(String groupId) {
+        try {
+            return Integer.parseInt(groupId.substring(Paxos.SLOT_PREFIX.length()));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+}
@@ -0,0 +1,149 @@
+package com.paxos;
+
+import com.paxos.tools.Logger;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.Supplier;
+
+/**
+ * Key-value state machine that the values committed in the rotating slot log are applied to -
+ * {@code SET <key> <value>} and {@code DEL <key>}.
+ * Any other value is a plain decision and leaves the state alone.
+ * A committed batch is split by key: commands on the same key are applied in log order while different keys are
+ * applied in parallel, so the resulting state is always the same as applying the batch serially.
+ * Batches are applied off the calling thread one after another, reads, snapshots and restores are queued behind
+ * the batches handed in before them so they see the log position they were asked at.
+ */
+public class StateMachine {
+    private static final int KEYS_PER_TASK = 16; // fewer independent keys are applied without forking
+
+    private final Map<String, String> state = new ConcurrentHashMap<>();
+    private final ForkJoinPool pool;
+    private CompletableFuture<Void> tail = CompletableFuture.completedFuture(null); // the last operation queued
+
+    /**
+     * @param pool runs the queued operations and the independent keys of a batch in parallel
+     */
+    public StateMachine(ForkJoinPool pool) {
+        this.pool = pool;
+    }
+
+    /**
+     * Queues a batch of committed values to be applied in log order - batches are applied in the order they are queued
+     *
+     * @param values the committed values in log order
+     */
+    public void apply(List<String> values) {
+        // conflict analysis - every command touches one key so the batch splits into independent per-key chains
+        Map<String, List<String[]>> chains = new LinkedHashMap<>();
+        for (String value : values) {
+            String[] command = parse(value);
+            if (command != null) chains.computeIfAbsent(command[1], key -> new ArrayList<>()).add(command);
+        }
+        if (chains.isEmpty()) return;
+
+        List<List<String[]>> independent = new ArrayList<>(chains.values());
+        enqueue(() -> {
+            new ApplyTask(independent, 0, independent.size()).invoke();
+            return null;
+        });
+    }
+
+    /**
+     * @param key the key to read
+     * @return the value of the key once every batch queued before is applied - null if it is not set
+     */
+    public CompletableFuture<String> get(String key) {
+        return enqueue(() -> state.get(key));
+    }
+
+    /**
+     * @return a copy of the state once every batch queued before is applied, so it matches the log position it was
+     * asked at
+     */
+    public CompletableFuture<Map<String, String>> snapshot() {
+        return enqueue(() -> new HashMap<>(state));
+    }
+
+    /**
+     * Replaces the state with a snapshot taken at a later log position once every batch queued before is applied
+     *
+     * @param snapshot the state to restore
+     */
+    public void restore(Map<String, String> snapshot) {
+        enqueue(() -> {
+            state.clear();
+            state.putAll(snapshot);
+            return null;
+        });
+    }
+
+    /**
+     * Runs an operation on the pool after the one queued before it - a failed operation does not hold up the rest
+     */
+    private synchronized <T> CompletableFuture<T> enqueue(Supplier<T> operation) {
+        CompletableFuture<T> result = tail.thenApplyAsync(ignored -> operation.get(), pool);
+        tail = result.handle((value, e) -> {
+            if (e != null) Logger.log("[StateMachine] Operation failed: " + e);
+            return null;
+        });
+        return result;
+    }
+
+    /**
+     * Applies one key's commands in log order
+     */
+    private void applyChain(List<String[]> chain) {
+        for (String[] command : chain) {
+            if (command[0].equals("SET")) state.put(command[1], command[2]);
+            else state.remove(command[1]);
+        }
+    }
+
+    /**
+     * @param value a committed value
+     * @return the command as {op, key, value} or null if the value is not a command
+     */
+    private static String[] parse(String value) {
+        if (value == null) return null;
+        String[] parts = value.trim().split("\\s+", 3);
+        String op = parts[0].toUpperCase();
+        if (op.equals("SET") && parts.length == 3) return new String[]{op, parts[1], parts[2]};
+        if (op.equals("DEL") && parts.length == 2) return new String[]{op, parts[1], null};
+        return null;
+    }
+
+    /**
+     * Splits the independent chains in halves until a task holds few enough keys to apply directly
+     */
+    @SuppressWarnings("serial")
+    private class ApplyTask extends RecursiveAction {
+        private final List<List<String[]>> chains;
+        private final int from;
+        private final int to;
+
+        ApplyTask(List<List<String[]>> chains, int from, int to) {
+            this.chains = chains;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= KEYS_PER_TASK) {
+                for (int i = from; i < to; i++) applyChain(chains.get(i));
+                return;
+            }
+            int mid = (from + to) >>> 1;
+            invokeAll(new ApplyTask(chains, from, mid), new ApplyTask(chains, mid, to));
+        }
+    }
+}
@@ -3,6 +3,7 @@ package com.paxos.roles;
 import com.paxos.tools.Logger;
 import com.paxos.tools.Message;
 import com.paxos.tools.NetworkManager;
+import com.paxos.tools.TraceEvents;
 
 import java.io.*;
 
@@ -10,9 +11,8 @@ import java.io.*;
  * The Acceptor functionality of the PAXOS algorithm
  */
 public class Acceptor {
-    private final Object lock = new Object();
-
     public String memberId;
+    public String groupId;
     public Integer promisedProposalNumber = null;
     public Integer acceptedNumber = null;
     public String acceptedValue = null;
@@ -20,8 +20,9 @@ public class Acceptor {
     public NetworkManager networkManager;
     public String stateFilePath;
 
-    public Acceptor(String memberId, NetworkManager networkManager, String stateFilePath) {
+    public Acceptor(String memberId, String groupId, NetworkManager networkManager, String stateFilePath) {
         this.memberId = memberId;
+        this.groupId = groupId;
         this.networkManager = networkManager;
         this.stateFilePath = stateFilePath;
     }
@@ -30,66 +31,97 @@ public class Acceptor {
      * Handles a message of type Prepare
      *
      * @param msg the message that is incoming
+     * @return the PROMISE or null if the proposal was rejected - only sent if the proposer is another member
      */
-    public void onPrepare(Message msg) {
+    public Message onPrepare(Message msg) {
         Logger.log("[onPrepare] Received PREPARE from " + msg.getSender() + " with proposalNumber=" + msg.getProposalNumber());
 
         Integer proposedNumber = parseProposalNumber(msg.getProposalNumber());
-        if (proposedNumber == null) return;
-
-        synchronized (lock) { // lock in case multiple prepares come in at the same time
-            if (isHigherProposal(proposedNumber)) {
-                promisedProposalNumber = proposedNumber;
-
-                Message promise = new Message(
-                        Message.MessageType.PROMISE,
-                        memberId,
-                        msg.getProposalNumber(),
-                        null,
-                        acceptedNumber != null ? acceptedNumber.toString() : null,
-                        acceptedValue
-                );
-
-                Logger.log("[onPrepare] Sending PROMISE to " + msg.getSender());
-                networkManager.sendMessage(msg.getSender(), promise);
-            } else {
-                Logger.log("[onPrepare] Ignoring PREPARE as higher proposal number seen highest:" + promisedProposalNumber + " seen:" + msg.getProposalNumber());
-            }
+        if (proposedNumber == null) return null;
+
+        if (isHigherProposal(proposedNumber)) {
+            promisedProposalNumber = proposedNumber;
+
+            Message promise = new Message(
+                    Message.MessageType.PROMISE,
+                    memberId,
+                    msg.getProposalNumber(),
+                    null,
+                    acceptedNumber != null ? acceptedNumber.toString() : null,
+                    acceptedValue,
+                    groupId,
+                    null,
+                    msg.getEpoch()
+            );
+
+            Logger.log("[onPrepare] Sending PROMISE to " + msg.getSender());
+            TraceEvents.roleTransition(memberId, "Acceptor", "PROMISED", groupId, msg.getProposalNumber(), msg.getSender());
+            if (!memberId.equals(msg.getSender())) networkManager.sendMessage(msg.getSender(), promise);
+            return promise;
         }
+        Logger.log("[onPrepare] Ignoring PREPARE as higher proposal number seen highest:" + promisedProposalNumber + " seen:" + msg.getProposalNumber());
+        TraceEvents.roleTransition(memberId, "Acceptor", "REJECTED_PREPARE", groupId, msg.getProposalNumber(), msg.getSender());
+        return null;
     }
 
     /**
      * Handles a message of type Accept_Request
      *
      * @param msg the message to be handled
+     * @return the ACCEPTED broadcast to the other members or null if the proposal was rejected
      */
-    public void onAcceptRequest(Message msg) {
+    public Message onAcceptRequest(Message msg) {
         Logger.log("[onAcceptRequest] Received ACCEPT_REQUEST from " + msg.getSender() + " proposalNumber=" + msg.getProposalNumber());
 
         Integer proposedNumber = parseProposalNumber(msg.getProposalNumber());
-        if (proposedNumber == null) return;
-
-        synchronized (lock) {
-            if (isHigherOrEqualProposal(proposedNumber)) {
-                promisedProposalNumber = proposedNumber;
-                acceptedNumber = proposedNumber;
-                acceptedValue = msg.getProposalValue();
-
-                Message accepted = new Message(
-                        Message.MessageType.ACCEPTED,
-                        memberId,
-                        msg.getProposalNumber(),
-                        msg.getProposalValue(),
-                        acceptedNumber != null ? acceptedNumber.toString() : null,
-                        acceptedValue
-                );
-
-                Logger.log("[onAcceptRequest] Broadcasting ACCEPTED for proposalNumber=" + msg.getProposalNumber());
-                networkManager.broadcast(accepted);
-            } else {
-                Logger.log("[onAcceptRequest] Ignoring ACCEPT_REQUEST as higher or equal number seen highest:" + acceptedNumber + " seen:" + msg.getAcceptedNumber());
-            }
+        if (proposedNumber == null) return null;
+
+        if (Proposer.isReservedBallot(proposedNumber) && acceptedNumber != null) {
+            // only a single value may be accepted in the fast and owner rounds
+            Logger.log("[onAcceptRequest] Ignoring reserved ballot ACCEPT_REQUEST as a value was already accepted");
+            TraceEvents.roleTransition(memberId, "Acceptor", "REJECTED_ACCEPT", groupId, msg.getProposalNumber(), msg.getSender());
+            return null;
         }
+        if (isHigherOrEqualProposal(proposedNumber)) {
+            promisedProposalNumber = proposedNumber;
+            acceptedNumber = proposedNumber;
+            acceptedValue = msg.getProposalValue();
+
+            Message accepted = new Message(
+                    Message.MessageType.ACCEPTED,
+                    memberId,
+                    msg.getProposalNumber(),
+                    msg.getProposalValue(),
+                    acceptedNumber != null ? acceptedNumber.toString() : null,
+                    acceptedValue,
+                    groupId,
+                    null,
+                    msg.getEpoch()
+            );
+
+            Logger.log("[onAcceptRequest] Broadcasting ACCEPTED for proposalNumber=" + msg.getProposalNumber());
+            TraceEvents.roleTransition(memberId, "Acceptor", "ACCEPTED", groupId, msg.getProposalNumber(), msg.getSender());
+            networkManager.broadcast(accepted);
+            return accepted;
+        }
+        Logger.log("[onAcceptRequest] Ignoring ACCEPT_REQUEST as higher or equal number seen highest:" + acceptedNumber + " seen:" + msg.getAcceptedNumber());
+        TraceEvents.roleTransition(memberId, "Acceptor", "REJECTED_ACCEPT", groupId, msg.getProposalNumber(), msg.getSender());
+        return null;
+    }
+
+    /**
+     * Takes over a value a member of the previous configuration accepted if it is newer than this acceptor's own.
+     * Only done before voting in a new epoch, when the rounds of the previous one can no longer complete
+     *
+     * @param number the ballot the value was accepted in
+     * @param value the accepted value
+     */
+    public void adopt(int number, String value) {
+        if (acceptedNumber != null && acceptedNumber >= number) return;
+        acceptedNumber = number;
+        acceptedValue = value;
+        if (promisedProposalNumber == null || promisedProposalNumber < number) promisedProposalNumber = number;
+        Logger.log("[adopt] Took over value accepted in ballot " + number + " for group " + groupId);
     }
 
     /**
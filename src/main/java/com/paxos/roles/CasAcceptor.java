@@ -0,0 +1,153 @@
+package com.paxos.roles;
+
+import com.paxos.tools.Logger;
+import com.paxos.tools.Message;
+import com.paxos.tools.NetworkManager;
+import com.paxos.tools.SimpleJsonUtil;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The Acceptor functionality of CASPaxos - every key is an independent rewritable register, the key is carried in
+ * the message group id. Unlike the single-decree Acceptor a register accepts a new value in every higher ballot.
+ * Only ballots of the member's current configuration epoch are taken part in, a round of another epoch is left to time out.
+ */
+public class CasAcceptor {
+    private final String memberId;
+    private final NetworkManager networkManager;
+    private final RegisterTable registers = new RegisterTable();
+
+    public CasAcceptor(String memberId, NetworkManager networkManager) {
+        this.memberId = memberId;
+        this.networkManager = networkManager;
+    }
+
+    /**
+     * Handles a CAS_PREPARE - promises the ballot and returns the register's accepted value
+     * (the proposal value carries the ballots of the values the accepted value was computed from)
+     *
+     * @param msg the message to be handled
+     */
+    public void onPrepare(Message msg) {
+        long ballot = CasProposer.parseBallot(msg.getProposalNumber());
+        if (ballot <= 0 || msg.getGroupId() == null || msg.getSender() == null || !inCurrentEpoch(msg)) return;
+
+        int index = registers.indexOf(msg.getGroupId());
+        if (ballot <= registers.getPromised(index)) {
+            nack(msg, registers.getPromised(index));
+            return;
+        }
+        registers.setPromised(index, ballot, msg.getSender());
+
+        networkManager.sendMessage(msg.getSender(), new Message(
+                Message.MessageType.CAS_PROMISE,
+                memberId,
+                msg.getProposalNumber(),
+                historyOf(index),
+                String.valueOf(registers.getAccepted(index)),
+                registers.getValue(index),
+                msg.getGroupId(),
+                null,
+                msg.getEpoch()
+        ));
+    }
+
+    /**
+     * Handles a CAS_ACCEPT - accepts the new value unless a higher ballot was promised since, or the same ballot was
+     * promised to another proposer (members whose ballot bits collide)
+     * (the accepted number carries the ballots of the values the new value was computed from)
+     *
+     * @param msg the message to be handled
+     */
+    public void onAccept(Message msg) {
+        long ballot = CasProposer.parseBallot(msg.getProposalNumber());
+        if (ballot <= 0 || msg.getGroupId() == null || msg.getSender() == null || !inCurrentEpoch(msg)) return;
+
+        int index = registers.indexOf(msg.getGroupId());
+        long promised = registers.getPromised(index);
+        if (ballot < promised || (ballot == promised && !msg.getSender().equals(registers.getPromisedTo(index)))) {
+            nack(msg, promised);
+            return;
+        }
+        registers.setPromised(index, ballot, msg.getSender());
+        registers.setAccepted(index, ballot, CasProposer.parseHistory(msg.getAcceptedNumber()), msg.getProposalValue());
+
+        networkManager.sendMessage(msg.getSender(), new Message(
+                Message.MessageType.CAS_ACCEPTED,
+                memberId,
+                msg.getProposalNumber(),
+                null,
+                null,
+                null,
+                msg.getGroupId(),
+                null,
+                msg.getEpoch()
+        ));
+    }
+
+    /**
+     * @return every register's accepted ballot, history and value as JSON by key - taken over by the members of the
+     * next configuration
+     */
+    public Map<String, String> acceptedState() {
+        Map<String, String> state = new HashMap<>();
+        for (int index = 0; index < registers.capacity(); index++) {
+            String key = registers.getKey(index);
+            if (key == null || registers.getAccepted(index) <= 0) continue;
+            Map<String, String> register = new HashMap<>();
+            register.put("ballot", String.valueOf(registers.getAccepted(index)));
+            register.put("history", historyOf(index));
+            if (registers.getValue(index) != null) register.put("value", registers.getValue(index));
+            state.put(key, SimpleJsonUtil.stringify(register));
+        }
+        return state;
+    }
+
+    /**
+     * Takes over a register value a member of the previous configuration accepted if it is newer than this acceptor's.
+     * Only done before voting in a new epoch, when the rounds of the previous one can no longer complete
+     *
+     * @param key the register key
+     * @param register the register's JSON from {@link #acceptedState()}
+     */
+    public void adopt(String key, String register) {
+        Map<String, String> fields = SimpleJsonUtil.parse(register);
+        long ballot = CasProposer.parseBallot(fields.get("ballot"));
+        if (ballot <= 0) return;
+
+        int index = registers.indexOf(key);
+        if (ballot <= registers.getAccepted(index)) return;
+        registers.setAccepted(index, ballot, CasProposer.parseHistory(fields.get("history")), fields.get("value"));
+        if (registers.getPromised(index) < ballot) registers.setPromised(index, ballot, null);
+    }
+
+    private boolean inCurrentEpoch(Message msg) {
+        return String.valueOf(networkManager.getMembership().getEpoch()).equals(msg.getEpoch());
+    }
+
+    private String historyOf(int index) {
+        long[] history = new long[RegisterTable.HISTORY];
+        for (int depth = 0; depth < history.length; depth++) history[depth] = registers.getHistory(index, depth);
+        return CasProposer.formatHistory(history);
+    }
+
+    /**
+     * Rejects a ballot telling the proposer the ballot it has to beat
+     */
+    private void nack(Message msg, long promised) {
+        Logger.log("[CasAcceptor] Rejecting " + msg.getType() + " for " + msg.getGroupId() + " ballot=" +
+                msg.getProposalNumber() + " promised=" + promised);
+        networkManager.sendMessage(msg.getSender(), new Message(
+                Message.MessageType.CAS_NACK,
+                memberId,
+                msg.getProposalNumber(),
+                null,
+                String.valueOf(promised),
+                null,
+                msg.getGroupId(),
+                null,
+                msg.getEpoch()
+        ));
+    }
+}
@@ -0,0 +1,364 @@
+package com.paxos.roles;
+
+import com.paxos.tools.Logger;
+import com.paxos.tools.Membership;
+import com.paxos.tools.Message;
+import com.paxos.tools.NetworkManager;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.Function;
+
+/**
+ * The Proposer functionality of CASPaxos - each round reads a register from a quorum, applies a change function to
+ * the value with the highest ballot and writes the result back to a quorum. Rounds on different keys run
+ * independently with no shared log, changes to the same key from this member are queued and run one at a time.
+ * A round stays in the configuration it started in - its ballot is tagged with the epoch and needs a joint quorum
+ * of the epoch's and the previous epoch's voters. Only used from the member's event loop.
+ */
+public class CasProposer {
+    private static final int MEMBER_BITS = 10; // low ballot bits are taken from the member id so ballots rarely collide
+    private static final long ROUND_TIMEOUT = 1000; // ms before a round is retried
+    private static final int MAX_ATTEMPTS = 10;
+
+    private final String memberId;
+    private final long memberBits;
+    private final NetworkManager networkManager;
+    private final ScheduledExecutorService scheduler;
+    private final Executor eventLoop;
+
+    private final Map<String, Deque<Change>> queued = new HashMap<>();
+    private final Map<String, Round> rounds = new HashMap<>();
+    private long counter = 0;
+
+    /**
+     * What a change function computed - the value to write and what the change completes with once it is written
+     */
+    public static final class Update {
+        final String value;
+        final String result;
+
+        public Update(String value, String result) {
+            this.value = value;
+            this.result = result;
+        }
+    }
+
+    /**
+     * A change waiting for or in its round
+     */
+    private static class Change {
+        final Function<String, Update> function;
+        final CompletableFuture<String> result;
+        int attempts = 0;
+        // ballot -> update of every interrupted attempt that may have written it, any of them may resurface
+        final Map<Long, Update> written = new HashMap<>();
+
+        Change(Function<String, Update> function, CompletableFuture<String> result) {
+            this.function = function;
+            this.result = result;
+        }
+    }
+
+    /**
+     * The round in progress for a key
+     */
+    private static class Round {
+        final String key;
+        final Change change;
+        final long ballot;
+        final Membership config;
+        final Set<String> promises = new HashSet<>();
+        final Set<String> accepts = new HashSet<>();
+        final Set<String> nacks = new HashSet<>();
+        long highestAccepted = -1;
+        long[] history = new long[RegisterTable.HISTORY];
+        String current = null;
+        Update next = null; // carries the result of the interrupted write if one already applied the change
+        boolean accepting = false;
+        boolean retrying = false;
+        ScheduledFuture<?> timeout;
+
+        Round(String key, Change change, long ballot, Membership config) {
+            this.key = key;
+            this.change = change;
+            this.ballot = ballot;
+            this.config = config;
+        }
+
+        String epoch() {
+            return String.valueOf(config.getEpoch());
+        }
+    }
+
+    public CasProposer(String memberId, NetworkManager networkManager, ScheduledExecutorService scheduler, Executor eventLoop) {
+        this.memberId = memberId;
+        this.memberBits = memberBits(memberId);
+        this.networkManager = networkManager;
+        this.scheduler = scheduler;
+        this.eventLoop = eventLoop;
+    }
+
+    /**
+     * Queues a change to a register
+     *
+     * @param key the register key
+     * @param function computes the update from the current value (null if the register was never written)
+     * @param result completed with the result of the update that was written once a quorum accepted it
+     */
+    public void change(String key, Function<String, Update> function, CompletableFuture<String> result) {
+        queued.computeIfAbsent(key, k -> new ArrayDeque<>()).addLast(new Change(function, result));
+        if (!rounds.containsKey(key)) startNext(key);
+    }
+
+    /**
+     * Starts a round for the next queued change of a key
+     */
+    private void startNext(String key) {
+        Deque<Change> changes = queued.get(key);
+        Change change = changes != null ? changes.pollFirst() : null;
+        if (change == null) {
+            queued.remove(key);
+            return;
+        }
+        start(key, change);
+    }
+
+    private void start(String key, Change change) {
+        if (!networkManager.hasCapacity()) {
+            fail(key, change, new RejectedExecutionException("Outbound queues full - change to " + key + " rejected"));
+            startNext(key);
+            return;
+        }
+        change.attempts++;
+        Round round = new Round(key, change, nextBallot(), networkManager.getMembership());
+        rounds.put(key, round);
+        round.timeout = scheduler.schedule(() -> eventLoop.execute(() -> retry(round, "timed out")),
+                ROUND_TIMEOUT, TimeUnit.MILLISECONDS);
+
+        Logger.log("[CasProposer] " + memberId + " starting round for " + key + " ballot=" + round.ballot);
+        Message prepare = new Message(Message.MessageType.CAS_PREPARE, memberId, String.valueOf(round.ballot),
+                null, null, null, key, null, round.epoch());
+        networkManager.broadcast(prepare);
+    }
+
+    /**
+     * Handles a CAS_PROMISE - once a quorum promised the change function is applied to the highest accepted value
+     *
+     * @param msg the promise
+     */
+    public void onPromise(Message msg) {
+        Round round = activeRound(msg);
+        if (round == null || round.accepting) return;
+
+        round.promises.add(msg.getSender());
+        long accepted = parseBallot(msg.getAcceptedNumber());
+        if (accepted > round.highestAccepted) {
+            round.highestAccepted = accepted;
+            round.history = parseHistory(msg.getProposalValue());
+            round.current = msg.getAcceptedValue();
+        }
+        if (!round.config.isQuorum(round.promises)) return;
+
+        try {
+            round.next = nextValue(round);
+        } catch (RuntimeException e) {
+            round.timeout.cancel(false);
+            rounds.remove(round.key);
+            fail(round.key, round.change, e);
+            startNext(round.key);
+            return;
+        }
+        round.accepting = true;
+        round.nacks.clear();
+
+        Message accept = new Message(Message.MessageType.CAS_ACCEPT, memberId, String.valueOf(round.ballot),
+                round.next.value, formatHistory(nextHistory(round)), null, round.key, null, round.epoch());
+        networkManager.broadcast(accept);
+    }
+
+    /**
+     * Works out the update to write - a retry after interrupted writes must not apply the change twice
+     *
+     * @param round the round that reached a quorum of promises
+     * @return the update to write
+     */
+    private Update nextValue(Round round) {
+        Update recovered = recover(round.key, round.change.written, nextHistory(round), round.current);
+        return recovered != null ? recovered : round.change.function.apply(round.current);
+    }
+
+    /**
+     * Ballots only decrease back through a value's history, so an interrupted write was applied if its ballot is in
+     * the latest value's history, and none was if a ballot older than all of them is reached first. A write held
+     * back by a later attempt is kept, as the later attempt may be interrupted too and leave it the highest ballot
+     *
+     * @param key the register key
+     * @param written ballot -> update of every interrupted attempt
+     * @param history the latest accepted ballot followed by its history
+     * @param current the latest accepted value
+     * @return the current value to write again completing with the applied write's result, or null if no interrupted
+     * write was applied so the change is computed afresh
+     * @throws IllegalStateException if the history is too short to tell
+     */
+    static Update recover(String key, Map<Long, Update> written, long[] history, String current) {
+        if (written.isEmpty()) return null;
+        long oldest = Collections.min(written.keySet());
+        for (long ballot : history) {
+            Update update = written.get(ballot);
+            if (update != null) {
+                // written again so it is held by a quorum
+                Logger.log("[CasProposer] Interrupted write to " + key + " was applied - completing it");
+                return new Update(current, update.result);
+            }
+            if (ballot < oldest) return null;
+        }
+        throw new IllegalStateException("Change to " + key + " was interrupted by another proposer - outcome unknown");
+    }
+
+    /**
+     * @return the history of a value computed in the round - the latest accepted ballot followed by its history
+     */
+    private static long[] nextHistory(Round round) {
+        long[] next = new long[RegisterTable.HISTORY];
+        next[0] = Math.max(round.highestAccepted, 0);
+        System.arraycopy(round.history, 0, next, 1, next.length - 1);
+        return next;
+    }
+
+    /**
+     * Handles a CAS_ACCEPTED - the change is done once a quorum accepted the new value
+     *
+     * @param msg the acknowledgement
+     */
+    public void onAccepted(Message msg) {
+        Round round = activeRound(msg);
+        if (round == null || !round.accepting) return;
+
+        round.accepts.add(msg.getSender());
+        if (!round.config.isQuorum(round.accepts)) return;
+
+        round.timeout.cancel(false);
+        rounds.remove(round.key);
+        Logger.log("[CasProposer] Register " + round.key + " changed to " + round.next.value + " ballot=" + round.ballot);
+        String result = round.next.result;
+        ForkJoinPool.commonPool().execute(() -> round.change.result.complete(result));
+        startNext(round.key);
+    }
+
+    /**
+     * Handles a CAS_NACK - another proposer holds a higher ballot, once too many acceptors rejected the ballot for a
+     * quorum to be reached the round is retried above it
+     *
+     * @param msg the rejection holding the promised ballot
+     */
+    public void onNack(Message msg) {
+        Round round = activeRound(msg);
+        if (round == null) return;
+        counter = Math.max(counter, parseBallot(msg.getAcceptedNumber()) >>> MEMBER_BITS);
+
+        round.nacks.add(msg.getSender());
+        Set<String> remaining = new HashSet<>(round.config.getBallotVoters());
+        remaining.remove(memberId);
+        remaining.removeAll(round.nacks);
+        if (!round.config.isQuorum(remaining)) retry(round, "rejected by " + msg.getSender());
+    }
+
+    /**
+     * Retries a round with a higher ballot after a random backoff, so competing proposers on a key do not collide again
+     */
+    private void retry(Round round, String reason) {
+        if (rounds.get(round.key) != round || round.retrying) return;
+        round.timeout.cancel(false);
+        rounds.remove(round.key);
+        if (round.accepting) round.change.written.put(round.ballot, round.next);
+
+        if (round.change.attempts >= MAX_ATTEMPTS) {
+            fail(round.key, round.change, new TimeoutException("Change to " + round.key + " failed after " + MAX_ATTEMPTS + " attempts"));
+            startNext(round.key);
+            return;
+        }
+        Logger.log("[CasProposer] Round for " + round.key + " " + reason + " - retrying");
+        // hold the key so queued changes wait behind the retry, late replies to the old ballot are ignored
+        round.retrying = true;
+        rounds.put(round.key, round);
+        long backoff = ThreadLocalRandom.current().nextLong(20L * round.change.attempts + 1);
+        scheduler.schedule(() -> eventLoop.execute(() -> {
+            if (rounds.get(round.key) != round) return;
+            rounds.remove(round.key);
+            start(round.key, round.change);
+        }), backoff, TimeUnit.MILLISECONDS);
+    }
+
+    private void fail(String key, Change change, Throwable error) {
+        Logger.log("[CasProposer] Change to " + key + " failed: " + error.getMessage());
+        ForkJoinPool.commonPool().execute(() -> change.result.completeExceptionally(error));
+    }
+
+    /**
+     * @return the round the reply belongs to or null if it is stale, from another epoch or from a non-voter
+     */
+    private Round activeRound(Message msg) {
+        Round round = msg.getGroupId() != null ? rounds.get(msg.getGroupId()) : null;
+        if (round == null || round.retrying || !String.valueOf(round.ballot).equals(msg.getProposalNumber())) return null;
+        if (!round.epoch().equals(msg.getEpoch()) || !round.config.countsToward(msg.getSender())) return null;
+        return round;
+    }
+
+    /**
+     * @return a ballot higher than any this member has used or been rejected with - the low bits come from the
+     * member id so they stay the same across reconfigurations. Two members whose bits collide may pick the same
+     * ballot, the acceptors only take it from the proposer it was promised to
+     */
+    long nextBallot() {
+        counter = Math.max(counter + 1, System.currentTimeMillis());
+        return (counter << MEMBER_BITS) | memberBits;
+    }
+
+    /**
+     * @param memberId the member id
+     * @return the low ballot bits of the member
+     */
+    static long memberBits(String memberId) {
+        int h = memberId.hashCode();
+        return (h ^ (h >>> 16)) & ((1 << MEMBER_BITS) - 1);
+    }
+
+    /**
+     * @param history ballots newest first
+     * @return the ballots comma separated for the wire
+     */
+    static String formatHistory(long[] history) {
+        StringBuilder sb = new StringBuilder();
+        for (long ballot : history) {
+            if (sb.length() > 0) sb.append(',');
+            sb.append(ballot);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * @param history comma separated ballots newest first
+     * @return the ballots - missing or invalid ones are 0 (no ballot)
+     */
+    static long[] parseHistory(String history) {
+        long[] ballots = new long[RegisterTable.HISTORY];
+        if (history == null) return ballots;
+        String[] parts = history.split(",");
+        for (int i = 0; i < ballots.length && i < parts.length; i++) ballots[i] = parseBallot(parts[i]);
+        return ballots;
+    }
+
+    /**
+     * @param ballot a ballot string
+     * @return the ballot or 0 (no ballot) if missing or invalid
+     */
+    static long parseBallot(String ballot) {
+        if (ballot == null) return 0;
+        try {
+            return Long.parseLong(ballot);
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+}
@@ -1,35 +1,50 @@
 package com.paxos.roles;
 
 import com.paxos.tools.Logger;
+import com.paxos.tools.Membership;
 import com.paxos.tools.Message;
 import com.paxos.tools.NetworkManager;
+import com.paxos.tools.TraceEvents;
 
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.function.IntFunction;
 
 /**
  * the Learner functionality of the PAXOS algorithm
  */
 public class Learner {
     private final String memberId;
-    private final int majority;
+    private final String groupId;
     private final NetworkManager networkManager;
+    private final Consumer<String> decisionListener;
+    private final IntFunction<Membership> configs; // epoch -> configuration of the group in it, null if not known
 
-    private final Map<String, Integer> proposalNumberToCount = new HashMap<>();
+    private final Map<String, Set<String>> proposalNumberToVoters = new HashMap<>();
     private boolean decided = false;
+    private String decidedValue = null;
 
-    public Learner(String memberId, int totalMembers, NetworkManager networkManager) {
+    public Learner(String memberId, String groupId, NetworkManager networkManager, IntFunction<Membership> configs,
+                   Consumer<String> decisionListener) {
         this.memberId = memberId;
-        this.majority = (totalMembers / 2) + 1;
+        this.groupId = groupId;
         this.networkManager = networkManager;
+        this.configs = configs;
+        this.decisionListener = decisionListener;
     }
 
     /**
-     * Handles ACCEPTED message
+     * Handles ACCEPTED message - votes are counted with the configuration of the ballot's epoch
      * @param msg The message to be handled
      */
-    public synchronized void onAccepted(Message msg) {
+    public void onAccepted(Message msg) {
         if (decided) return;
+        Membership config = configOf(msg.getEpoch());
+        // members still catching up do not count toward quorums, a ballot of an epoch not reached yet is learned later
+        if (config == null || !config.countsToward(msg.getSender())) return;
 
         String acceptedNumber = msg.getAcceptedNumber();
         String acceptedValue = msg.getAcceptedValue();
@@ -37,27 +52,55 @@ public class Learner {
         Logger.log("[onAccepted] Learner " + memberId + " received ACCEPTED for proposalNumber=" +
                 acceptedNumber + " value=" + acceptedValue);
 
-        // Increment count for this proposalNumber
-        proposalNumberToCount.put(acceptedNumber,
-                proposalNumberToCount.getOrDefault(acceptedNumber, 0) + 1);
+        // Collect the voters of this proposalNumber - keyed with the epoch and the value as the fast round
+        // may have several values accepted under the same number
+        String key = msg.getEpoch() + ":" + acceptedNumber + ":" + acceptedValue;
+        Set<String> voters = proposalNumberToVoters.computeIfAbsent(key, k -> new HashSet<>());
+        voters.add(msg.getSender());
 
-        // Check for majority
-        int count = proposalNumberToCount.get(acceptedNumber);
-        if (count >= majority) {
+        // Check for majority (or fast quorum if in the fast round)
+        boolean fast = String.valueOf(Proposer.FAST_BALLOT).equals(acceptedNumber);
+        if (fast ? config.isFastQuorum(voters) : config.isQuorum(voters)) {
             Logger.log("[onAccepted] Majority reached for proposalNumber=" + acceptedNumber +
-                    " with value=" + acceptedValue + " (" + count + "/" + majority + ")");
+                    " with value=" + acceptedValue + " (" + voters.size() + " votes in epoch " + msg.getEpoch() + ")");
+            TraceEvents.roleTransition(memberId, "Learner", "DECIDED", groupId, acceptedNumber, msg.getSender());
             onDecide(acceptedValue);
         }
     }
 
+    /**
+     * @param epoch the epoch a ballot was tagged with
+     * @return the configuration of the group in the epoch or null if it is not known
+     */
+    private Membership configOf(String epoch) {
+        if (epoch == null) return null;
+        try {
+            return configs.apply(Integer.parseInt(epoch));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Handles LEARN message - the decision reached by another member
+     * @param msg The message to be handled
+     */
+    public void onLearn(Message msg) {
+        if (decided) return;
+        TraceEvents.roleTransition(memberId, "Learner", "LEARNED", groupId, msg.getProposalNumber(), msg.getSender());
+        onDecide(msg.getAcceptedValue());
+    }
+
     /**
      * Called when the learner reaches a majority decision.
      */
-    public synchronized void onDecide(String value) {
+    public void onDecide(String value) {
         if (decided) return;
 
         decided = true;
+        decidedValue = value;
 
+        Logger.log("[onDecide] Group " + groupId + " decided");
         Logger.log("[onDecide] CONSENSUS: " + value);
 
         // Optionally broadcast LEARN to inform all members
@@ -67,13 +110,38 @@ public class Learner {
                 null,
                 null,
                 null,
-                value
+                value,
+                groupId
         );
 
         networkManager.broadcast(learnMsg);
+
+        if (decisionListener != null) decisionListener.accept(value);
+    }
+
+    /**
+     * Called when the owner of a log slot skips it - only the owner could propose anything but a no-op,
+     * so the no-op is known to be chosen without a round and need not be re-broadcast
+     *
+     * @param noOp the no-op value
+     */
+    public void onSkip(String noOp) {
+        if (decided) return;
+
+        decided = true;
+        decidedValue = noOp;
+
+        Logger.log("[onSkip] Group " + groupId + " skipped by its owner");
+        TraceEvents.roleTransition(memberId, "Learner", "SKIPPED", groupId, null, null);
+
+        if (decisionListener != null) decisionListener.accept(noOp);
     }
 
     public boolean isDecided() {
         return decided;
     }
+
+    public String getDecidedValue() {
+        return decidedValue;
+    }
 }
@@ -1,21 +1,43 @@
 package com.paxos.roles;
 
 import com.paxos.tools.Logger;
+import com.paxos.tools.Membership;
 import com.paxos.tools.Message;
 import com.paxos.tools.NetworkManager;
+import com.paxos.tools.TraceEvents;
 
 import java.time.Instant;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
 
 /**
  * Holds the Proposer functionality of the PAXOS algorithm
  */
 public class Proposer {
+    /**
+     * Ballot pre-reserved for the Fast Paxos round - lower than any classic proposal number
+     * so a classic PREPARE always supersedes it
+     */
+    public static final int FAST_BALLOT = Integer.MIN_VALUE;
+
+    /**
+     * Ballot pre-reserved for the owner of a log slot - only the owner proposes in it so it may skip
+     * straight to the ACCEPT_REQUEST phase, any classic proposal (revocation) supersedes it
+     */
+    public static final int OWNER_BALLOT = Integer.MIN_VALUE + 1;
+
     private final String memberId;
+    private final String groupId;
     private final NetworkManager networkManager;
-    private final int quorumSize;
+    private final Supplier<Membership> configs; // current configuration of the group, null if not known yet
+    private final Consumer<Message> localAcceptor; // hands a request to this member's own acceptor
 
+    private Membership config = null; // configuration of the latest round - only votes of its epoch count
     private int myCounter = 0;
     private String proposalValue = null;
 
@@ -25,24 +47,158 @@ public class Proposer {
     private final Map<String, Message> pendingPromises = new HashMap<>();
     private final Map<String, Message> pendingAccepts = new HashMap<>();
 
-    public Proposer(String memberId, NetworkManager networkManager, int quorumSize) {
+    // Fast round tracking
+    private String fastValue = null;
+    private final Map<String, String> fastVotes = new HashMap<>();
+    private final Map<String, Integer> fastValuesPromised = new HashMap<>();
+
+    public Proposer(String memberId, String groupId, NetworkManager networkManager, Supplier<Membership> configs,
+                    Consumer<Message> localAcceptor) {
         this.memberId = memberId;
+        this.groupId = groupId;
         this.networkManager = networkManager;
-        this.quorumSize = quorumSize;
+        this.configs = configs;
+        this.localAcceptor = localAcceptor;
+    }
+
+    /**
+     * Sends a request to every acceptor - the broadcast reaches the other members, this member's acceptor is
+     * handed it directly so the member votes in its own rounds
+     *
+     * @param request the PREPARE or ACCEPT_REQUEST
+     */
+    private void sendToAcceptors(Message request) {
+        networkManager.broadcast(request);
+        localAcceptor.accept(request);
+    }
+
+    /**
+     * Takes the group's current configuration for a new round - its ballot is tagged with the configuration's epoch
+     *
+     * @param value value to be proposed
+     * @return false if the configuration of the group is not known yet
+     */
+    private boolean enterConfig(String value) {
+        Membership current = configs.get();
+        if (current == null) {
+            Logger.log("[enterConfig] Configuration of " + groupId + " not known yet - rejecting proposal for " + value);
+            return false;
+        }
+        config = current;
+        return true;
+    }
+
+    /**
+     * @return true if the reply is a vote of a member counting toward the latest round's quorums in its epoch
+     */
+    private boolean countsInRound(Message reply) {
+        return config != null && String.valueOf(config.getEpoch()).equals(reply.getEpoch()) &&
+                config.countsToward(reply.getSender());
+    }
+
+    /**
+     * Starts a Fast Paxos round - the value is sent straight to the acceptors in the fast ballot
+     * skipping the PREPARE/PROMISE phase. Falls back to the classic path on collision.
+     *
+     * @param value value to be proposed
+     * @return false if the round was not started due to backpressure
+     */
+    public boolean fastPropose(String value) {
+        if (!networkManager.hasCapacity()) {
+            Logger.log("[fastPropose] Outbound queues full - rejecting proposal for " + value);
+            return false;
+        }
+        if (!enterConfig(value)) return false;
+
+        this.fastValue = value;
+        fastVotes.clear();
+
+        Logger.log("Proposer " + memberId + " starting FAST round with value=" + value);
+        TraceEvents.roleTransition(memberId, "Proposer", "FAST_ROUND", groupId, String.valueOf(FAST_BALLOT), null);
+
+        Message acceptReq = new Message(
+                Message.MessageType.ACCEPT_REQUEST,
+                memberId,
+                String.valueOf(FAST_BALLOT),
+                value,
+                null,
+                null,
+                groupId,
+                null,
+                String.valueOf(config.getEpoch())
+        );
+
+        sendToAcceptors(acceptReq);
+        return true;
+    }
+
+    /**
+     * Proposes a value in a slot this member owns - sent straight to the acceptors in the owner ballot
+     * as no other member can have proposed in it.
+     *
+     * @param value value to be proposed
+     * @return false if the round was not started due to backpressure
+     */
+    public boolean ownerPropose(String value) {
+        if (!networkManager.hasCapacity()) {
+            Logger.log("[ownerPropose] Outbound queues full - rejecting proposal for " + value);
+            return false;
+        }
+        if (!enterConfig(value)) return false;
+
+        myCounter = OWNER_BALLOT;
+        this.proposalValue = value;
+
+        Logger.log("Proposer " + memberId + " starting OWNER round in group " + groupId + " with value=" + value);
+        TraceEvents.roleTransition(memberId, "Proposer", "OWNER_ROUND", groupId, String.valueOf(OWNER_BALLOT), null);
+
+        Message acceptReq = new Message(
+                Message.MessageType.ACCEPT_REQUEST,
+                memberId,
+                String.valueOf(OWNER_BALLOT),
+                value,
+                null,
+                null,
+                groupId,
+                null,
+                String.valueOf(config.getEpoch())
+        );
+
+        pendingPromises.clear();
+        pendingAccepts.clear();
+        fastValuesPromised.clear();
+        sendToAcceptors(acceptReq);
+        return true;
+    }
+
+    /**
+     * @param proposalNumber the ballot to check
+     * @return true for the pre-reserved ballots in which an acceptor may only accept a single value
+     */
+    public static boolean isReservedBallot(int proposalNumber) {
+        return proposalNumber == FAST_BALLOT || proposalNumber == OWNER_BALLOT;
     }
 
     /**
      * Prepares a proposal with specified value and broadcasts to all members
      *
      * @param value value to be proposed
+     * @return false if the round was not started due to backpressure
      */
-    public void prepare(String value) {
+    public boolean prepare(String value) {
+        if (!networkManager.hasCapacity()) {
+            Logger.log("[prepare] Outbound queues full - rejecting proposal for " + value);
+            return false;
+        }
+        if (!enterConfig(value)) return false;
+
         // use time as monotonic increasing value
         myCounter = (int) Instant.now().toEpochMilli();
 
         this.proposalValue = value;
 
         Logger.log("Proposer " + memberId + " starting PREPARE phase with proposalNumber=" + myCounter);
+        TraceEvents.roleTransition(memberId, "Proposer", "PREPARE", groupId, String.valueOf(myCounter), null);
 
         Message prepare = new Message(
                 Message.MessageType.PREPARE,
@@ -50,12 +206,17 @@ public class Proposer {
                 String.valueOf(myCounter),
                 proposalValue,
                 null,
-                null
+                null,
+                groupId,
+                null,
+                String.valueOf(config.getEpoch())
         );
 
         pendingPromises.clear();
         pendingAccepts.clear();
-        networkManager.broadcast(prepare);
+        fastValuesPromised.clear();
+        sendToAcceptors(prepare);
+        return true;
     }
 
     /**
@@ -73,11 +234,18 @@ public class Proposer {
             return;
         }
 
+        // members still catching up and promises made in another configuration do not count toward quorums
+        if (!countsInRound(promise)) return;
+
+        boolean promisedBefore = config.isQuorum(pendingPromises.keySet());
         pendingPromises.put(sender, promise);
 
         if (promise.getAcceptedNumber() != null) {
             try {
                 int acceptedNum = Integer.parseInt(promise.getAcceptedNumber());
+                if (acceptedNum == FAST_BALLOT && promise.getAcceptedValue() != null) {
+                    fastValuesPromised.merge(promise.getAcceptedValue(), 1, Integer::sum);
+                }
                 if (highestAcceptedNumberSeen == null || acceptedNum > highestAcceptedNumberSeen) {
                     highestAcceptedNumberSeen = acceptedNum;
                     highestAcceptedValueSeen = promise.getAcceptedValue();
@@ -89,7 +257,10 @@ public class Proposer {
             } catch (NumberFormatException ignored) {}
         }
 
-        if (pendingPromises.size() >= quorumSize) {
+        if (config.isQuorum(pendingPromises.keySet())) {
+            if (!promisedBefore) {
+                TraceEvents.roleTransition(memberId, "Proposer", "ACCEPT_PHASE", groupId, promise.getProposalNumber(), sender);
+            }
             whenQuorumPromises();
         }
     }
@@ -98,9 +269,16 @@ public class Proposer {
      * When proposer acquires enough promises we send ACCEPT_REQUEST to all members
      */
     private void whenQuorumPromises() {
-        Logger.log("[whenQuorumPromises] Quorum of PROMISES reached (" + pendingPromises.size() + "/" + quorumSize +
+        Logger.log("[whenQuorumPromises] Quorum of PROMISES reached (" + pendingPromises.size() + " in epoch " + config.getEpoch() +
                 ") — sending ACCEPT_REQUEST with value=" + proposalValue);
 
+        // fast round was the highest accepted - several values may have been accepted in it,
+        // the most frequent is the only one that could have reached a fast quorum
+        if (highestAcceptedNumberSeen != null && highestAcceptedNumberSeen == FAST_BALLOT && !fastValuesPromised.isEmpty()) {
+            proposalValue = mostFrequent(fastValuesPromised);
+            Logger.log("[whenQuorumPromises] Recovering from fast round with value=" + proposalValue);
+        }
+
         if (proposalValue == null) {
             Logger.log("[whenQuorumPromises] WARN: proposalValue is null — falling back to previously proposed value");
             proposalValue = highestAcceptedValueSeen != null ? highestAcceptedValueSeen : "LOST_VALUE";
@@ -112,10 +290,13 @@ public class Proposer {
                 String.valueOf(myCounter),
                 proposalValue,
                 null,
-                null
+                null,
+                groupId,
+                null,
+                String.valueOf(config.getEpoch())
         );
 
-        networkManager.broadcast(acceptReq);
+        sendToAcceptors(acceptReq);
     }
 
     /**
@@ -126,12 +307,23 @@ public class Proposer {
         Logger.log("[handleAccepted] Received ACCEPTED from " + accepted.getSender() +
                 " for proposalNumber=" + accepted.getProposalNumber());
 
+        if (!countsInRound(accepted)) return;
+
+        if (String.valueOf(FAST_BALLOT).equals(accepted.getProposalNumber())) {
+            handleFastAccepted(accepted);
+            return;
+        }
+
         if (!String.valueOf(myCounter).equals(accepted.getProposalNumber())) return;
 
+        boolean chosenBefore = config.isQuorum(pendingAccepts.keySet());
         pendingAccepts.put(accepted.getSender(), accepted);
 
-        if (pendingAccepts.size() >= quorumSize) {
+        if (config.isQuorum(pendingAccepts.keySet())) {
             Logger.log("[handleAccepted] Proposal " + memberId + " " + myCounter + " is CHOSEN with value=" + proposalValue);
+            if (!chosenBefore) {
+                TraceEvents.roleTransition(memberId, "Proposer", "CHOSEN", groupId, accepted.getProposalNumber(), accepted.getSender());
+            }
 
             Message decide = new Message(
                     Message.MessageType.LEARN,
@@ -139,10 +331,73 @@ public class Proposer {
                     String.valueOf(myCounter),
                     proposalValue, // chosen value
                     null,
-                    proposalValue
+                    proposalValue,
+                    groupId
             );
 
             networkManager.broadcast(decide);
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * Tracks the votes of the fast round and falls back to a classic round once a fast quorum
+     * can no longer be reached for any single value (collision)
+     *
+     * @param accepted the ACCEPTED message for the fast ballot
+     */
+    private void handleFastAccepted(Message accepted) {
+        if (fastValue == null) return;
+
+        fastVotes.put(accepted.getSender(), accepted.getAcceptedValue());
+
+        Map<String, Integer> counts = new HashMap<>();
+        for (String v : fastVotes.values()) counts.merge(v, 1, Integer::sum);
+        String best = mostFrequent(counts);
+        Set<String> bestVoters = new HashSet<>();
+        fastVotes.forEach((voter, v) -> {
+            if (Objects.equals(v, best)) bestVoters.add(voter);
+        });
+
+        if (config.isFastQuorum(bestVoters)) {
+            Logger.log("[handleFastAccepted] Fast quorum reached (" + bestVoters.size() + " in epoch " + config.getEpoch() + ") value=" + best);
+            fastValue = null;
+            return;
+        }
+
+        // the votes still outstanding could only complete a fast quorum for the value with the most votes
+        Set<String> reachable = new HashSet<>(config.getBallotVoters());
+        reachable.removeAll(fastVotes.keySet());
+        reachable.addAll(bestVoters);
+        if (!config.isFastQuorum(reachable)) {
+            Logger.log("[handleFastAccepted] Fast round collision - falling back to classic round");
+            TraceEvents.roleTransition(memberId, "Proposer", "FAST_COLLISION", groupId, accepted.getProposalNumber(), accepted.getSender());
+            String value = fastValue;
+            fastValue = null;
+            prepare(value);
+        }
+    }
+
+    /**
+     * @return the ballot of this member's latest round in the group
+     */
+    public String getBallot() {
+        return String.valueOf(myCounter);
+    }
+
+    /**
+     * Utility function to get the value with the highest count
+     * @param counts value to count map
+     * @return the most frequent value
+     */
+    private static String mostFrequent(Map<String, Integer> counts) {
+        String best = null;
+        int bestCount = -1;
+        for (Map.Entry<String, Integer> e : counts.entrySet()) {
+            if (e.getValue() > bestCount) {
+                best = e.getKey();
+                bestCount = e.getValue();
+            }
+        }
+        return best;
+    }
+}
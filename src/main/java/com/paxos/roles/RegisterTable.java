@@ -0,0 +1,129 @@
+package com.paxos.roles;
+
+/**
+ * Acceptor state of every CAS register - an open-addressed table with linear probing over parallel arrays,
+ * so ballots are held as primitives and a lookup allocates nothing. Registers are never removed.
+ */
+class RegisterTable {
+    private static final int INITIAL_CAPACITY = 64; // must be a power of two
+    static final int HISTORY = 4; // ballots of the values each accepted value was computed from, newest first
+
+    private String[] keys = new String[INITIAL_CAPACITY];
+    private long[] promised = new long[INITIAL_CAPACITY];
+    private String[] promisedTo = new String[INITIAL_CAPACITY]; // proposer the ballot was promised to, null if unknown
+    private long[] accepted = new long[INITIAL_CAPACITY];
+    private long[] history = new long[INITIAL_CAPACITY * HISTORY];
+    private String[] values = new String[INITIAL_CAPACITY];
+    private int size = 0;
+
+    /**
+     * Gets the index of a key's register creating it (no promise, nothing accepted) if it does not exist
+     *
+     * @param key the register key
+     * @return the index of the register - valid until the next register is created
+     */
+    int indexOf(String key) {
+        int index = find(keys, key);
+        if (keys[index] != null) return index;
+
+        if (2 * (size + 1) > keys.length) {
+            grow();
+            index = find(keys, key);
+        }
+        keys[index] = key;
+        size++;
+        return index;
+    }
+
+    /**
+     * @return the number of indexes - registers are at the indexes holding a key
+     */
+    int capacity() {
+        return keys.length;
+    }
+
+    /**
+     * @return the key of the register at the index or null if none is
+     */
+    String getKey(int index) {
+        return keys[index];
+    }
+
+    long getPromised(int index) {
+        return promised[index];
+    }
+
+    /**
+     * @return the proposer the promised ballot belongs to or null if not known (e.g. a ballot taken over)
+     */
+    String getPromisedTo(int index) {
+        return promisedTo[index];
+    }
+
+    void setPromised(int index, long ballot, String proposer) {
+        promised[index] = ballot;
+        promisedTo[index] = proposer;
+    }
+
+    long getAccepted(int index) {
+        return accepted[index];
+    }
+
+    /**
+     * @param depth 0 for the ballot of the value the accepted value was computed from, 1 for that value's basis...
+     * @return the ballot or 0 if the history goes back no further
+     */
+    long getHistory(int index, int depth) {
+        return history[index * HISTORY + depth];
+    }
+
+    String getValue(int index) {
+        return values[index];
+    }
+
+    void setAccepted(int index, long ballot, long[] basis, String value) {
+        accepted[index] = ballot;
+        System.arraycopy(basis, 0, history, index * HISTORY, HISTORY);
+        values[index] = value;
+    }
+
+    /**
+     * @return the slot holding the key or the empty slot it belongs in
+     */
+    private static int find(String[] keys, String key) {
+        int mask = keys.length - 1;
+        int h = key.hashCode();
+        int index = (h ^ (h >>> 16)) & mask;
+        while (keys[index] != null && !keys[index].equals(key)) index = (index + 1) & mask;
+        return index;
+    }
+
+    /**
+     * Doubles the capacity keeping the load factor at most 1/2
+     */
+    private void grow() {
+        String[] oldKeys = keys;
+        long[] oldPromised = promised;
+        String[] oldPromisedTo = promisedTo;
+        long[] oldAccepted = accepted;
+        long[] oldHistory = history;
+        String[] oldValues = values;
+
+        keys = new String[oldKeys.length * 2];
+        promised = new long[keys.length];
+        promisedTo = new String[keys.length];
+        accepted = new long[keys.length];
+        history = new long[keys.length * HISTORY];
+        values = new String[keys.length];
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] == null) continue;
+            int index = find(keys, oldKeys[i]);
+            keys[index] = oldKeys[i];
+            promised[index] = oldPromised[i];
+            promisedTo[index] = oldPromisedTo[i];
+            accepted[index] = oldAccepted[i];
+            System.arraycopy(oldHistory, i * HISTORY, history, index * HISTORY, HISTORY);
+            values[index] = oldValues[i];
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package com.paxos.tools;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Single threaded event loop - any thread may post tasks to the lock-free mailbox (multi-producer)
+ * and they are run one at a time in order by the loop thread (single consumer).
+ * State only touched from tasks run on the loop needs no locking.
+ * A task that throws is logged and the loop moves on to the next one.
+ */
+public class EventLoop implements Executor {
+    private final Queue<Runnable> mailbox = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean parked = new AtomicBoolean(false);
+    private final Thread thread;
+    private volatile boolean running = true;
+
+    public EventLoop(String name) {
+        this.thread = new Thread(this::run, name);
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    /**
+     * Posts a task to be run on the loop thread
+     *
+     * @param task the task to run
+     */
+    @Override
+    public void execute(Runnable task) {
+        mailbox.offer(task);
+        if (parked.get()) LockSupport.unpark(thread);
+    }
+
+    /**
+     * @return true if called from the loop thread
+     */
+    public boolean inLoop() {
+        return Thread.currentThread() == thread;
+    }
+
+    /**
+     * Stops the loop - tasks still in the mailbox are dropped
+     */
+    public void stop() {
+        running = false;
+        LockSupport.unpark(thread);
+    }
+
+    /**
+     * Drains the mailbox parking the thread whenever it is empty
+     */
+    private void run() {
+        while (running) {
+            Runnable task = mailbox.poll();
+            if (task == null) {
+                parked.set(true);
+                // re-check after publishing the parked flag so a concurrent post is not missed
+                if (mailbox.isEmpty() && running) LockSupport.park(this);
+                parked.set(false);
+                continue;
+            }
+            try {
+                task.run();
+            } catch (Throwable e) {
+                // an escaping error (e.g. a StackOverflowError) would otherwise end the thread and silently stop the member
+                StackTraceElement[] trace = e.getStackTrace();
+                Logger.log("[EventLoop] Task failed: " + e + (trace.length > 0 ? " at " + trace[0] : ""));
+            }
+        }
+    }
+}
@@ -0,0 +1,136 @@
+package com.paxos.tools;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Phi-accrual failure detector - keeps a window of heartbeat inter-arrival times per peer and
+ * turns the time since the last heartbeat into a suspicion level (phi)
+ */
+public class FailureDetector {
+    private static final int WINDOW_SIZE = 100; // inter-arrival samples kept per peer
+    private static final double MIN_STD_DEVIATION_MS = 100;
+    private static final double PHI_THRESHOLD = 8.0; // phi above this = suspected
+
+    private final long expectedIntervalMs;
+    private final Map<String, PeerHistory> peers = new ConcurrentHashMap<>();
+
+    public FailureDetector(long expectedIntervalMs) {
+        this.expectedIntervalMs = expectedIntervalMs;
+    }
+
+    /**
+     * Heartbeat history of a single peer
+     */
+    private class PeerHistory {
+        private final Deque<Long> intervals = new ArrayDeque<>();
+        private long lastHeartbeat;
+        private boolean suspected = false;
+        private double sum = 0;
+        private double sumSquares = 0;
+
+        PeerHistory(long now) {
+            // bootstrap with the expected interval so a new peer starts as available
+            lastHeartbeat = now;
+            addInterval(expectedIntervalMs);
+        }
+
+        void addInterval(long interval) {
+            intervals.addLast(interval);
+            sum += interval;
+            sumSquares += (double) interval * interval;
+            if (intervals.size() > WINDOW_SIZE) {
+                long removed = intervals.removeFirst();
+                sum -= removed;
+                sumSquares -= (double) removed * removed;
+            }
+        }
+
+        double phi(long now) {
+            if (suspected) return Double.POSITIVE_INFINITY;
+
+            double mean = sum / intervals.size();
+            double variance = Math.max(0, sumSquares / intervals.size() - mean * mean);
+            double stdDev = Math.max(Math.sqrt(variance), MIN_STD_DEVIATION_MS);
+
+            // logistic approximation of the normal cumulative distribution
+            double y = ((now - lastHeartbeat) - mean) / stdDev;
+            double e = Math.exp(-y * (1.5976 + 0.070566 * y * y));
+            if (now - lastHeartbeat > mean) return -Math.log10(e / (1.0 + e));
+            return -Math.log10(1.0 - 1.0 / (1.0 + e));
+        }
+    }
+
+    /**
+     * Starts monitoring a peer - it becomes suspected if it is never heard from
+     *
+     * @param peerId the peer to monitor
+     */
+    public void monitor(String peerId) {
+        peers.computeIfAbsent(peerId, id -> new PeerHistory(System.currentTimeMillis()));
+    }
+
+    /**
+     * Records a heartbeat (or any other message) from a peer
+     *
+     * @param peerId the peer heard from
+     */
+    public void heartbeat(String peerId) {
+        long now = System.currentTimeMillis();
+        PeerHistory history = peers.computeIfAbsent(peerId, id -> new PeerHistory(now));
+        synchronized (history) {
+            if (history.suspected) {
+                history.suspected = false;
+            } else if (now > history.lastHeartbeat) {
+                history.addInterval(now - history.lastHeartbeat);
+            }
+            history.lastHeartbeat = now;
+        }
+    }
+
+    /**
+     * Marks a peer as suspected until it is heard from again e.g. after failing to send to it
+     *
+     * @param peerId the unreachable peer
+     */
+    public void suspect(String peerId) {
+        PeerHistory history = peers.computeIfAbsent(peerId, id -> new PeerHistory(System.currentTimeMillis()));
+        synchronized (history) {
+            history.suspected = true;
+        }
+    }
+
+    /**
+     * Gets the suspicion level of a peer
+     *
+     * @param peerId the peer to check
+     * @return phi - 0 for a peer never seen
+     */
+    public double phi(String peerId) {
+        PeerHistory history = peers.get(peerId);
+        if (history == null) return 0;
+        synchronized (history) {
+            return history.phi(System.currentTimeMillis());
+        }
+    }
+
+    /**
+     * @param peerId the peer to check
+     * @return true if the peer is not currently suspected
+     */
+    public boolean isAvailable(String peerId) {
+        return phi(peerId) < PHI_THRESHOLD;
+    }
+
+    /**
+     * @return the current suspicion level of every known peer
+     */
+    public Map<String, Double> suspicionLevels() {
+        Map<String, Double> levels = new TreeMap<>();
+        for (String peerId : peers.keySet()) levels.put(peerId, phi(peerId));
+        return levels;
+    }
+}
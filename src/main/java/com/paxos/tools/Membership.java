@@ -0,0 +1,202 @@
+package com.paxos.tools;
+
+import java.net.InetSocketAddress;
+import java.util.*;
+
+/**
+ * Immutable snapshot of the cluster membership for one configuration epoch.
+ * Members that are still catching up are addressable but not counted as voters.
+ * Learners are non-voting members that only receive decided values and are never promoted automatically.
+ * The voters of the epoch before are kept too - a ballot of the epoch needs a majority of both (joint consensus),
+ * so quorums of ballots in consecutive epochs always intersect however the voters changed. A removed voter stays
+ * addressable and keeps voting until the joint configuration ends. Quorums of epochs further apart need not intersect,
+ * so the voters of an epoch take over the acceptor state of the one before before voting in it.
+ */
+public class Membership {
+    /**
+     * Change that ends the joint configuration of the change before it, leaving the members as they are
+     */
+    public static final String SETTLE = "SETTLE";
+
+    private final int epoch;
+    private final Map<String, InetSocketAddress> addresses;
+    private final Set<String> voters;
+    private final Set<String> learners;
+    private final Set<String> previousVoters;
+
+    public Membership(int epoch, Map<String, InetSocketAddress> addresses, Set<String> voters) {
+        this(epoch, addresses, voters, Set.of());
+    }
+
+    public Membership(int epoch, Map<String, InetSocketAddress> addresses, Set<String> voters, Set<String> learners) {
+        this(epoch, addresses, voters, learners, voters);
+    }
+
+    public Membership(int epoch, Map<String, InetSocketAddress> addresses, Set<String> voters, Set<String> learners,
+                      Set<String> previousVoters) {
+        this.epoch = epoch;
+        this.addresses = Collections.unmodifiableMap(new LinkedHashMap<>(addresses));
+        this.voters = Collections.unmodifiableSet(new TreeSet<>(voters));
+        this.learners = Collections.unmodifiableSet(new TreeSet<>(learners));
+        this.previousVoters = Collections.unmodifiableSet(new TreeSet<>(previousVoters));
+    }
+
+    public int getEpoch() {
+        return epoch;
+    }
+
+    public Map<String, InetSocketAddress> getAddresses() {
+        return addresses;
+    }
+
+    public Set<String> getVoters() {
+        return voters;
+    }
+
+    public boolean isVoter(String memberId) {
+        return voters.contains(memberId);
+    }
+
+    public Set<String> getLearners() {
+        return learners;
+    }
+
+    public boolean isLearner(String memberId) {
+        return learners.contains(memberId);
+    }
+
+    /**
+     * @param memberId member to check
+     * @return true if the member's votes count in this epoch's ballots - a voter of this or the previous epoch
+     */
+    public boolean countsToward(String memberId) {
+        return voters.contains(memberId) || previousVoters.contains(memberId);
+    }
+
+    /**
+     * @param members the members that voted for a ballot of this epoch
+     * @return true if they hold a majority of this epoch's voters and of the previous epoch's
+     */
+    public boolean isQuorum(Collection<String> members) {
+        return count(voters, members) >= quorumSize() && count(previousVoters, members) >= (previousVoters.size() / 2) + 1;
+    }
+
+    /**
+     * @param members the members that voted for a value in the fast ballot of this epoch
+     * @return true if they hold a fast quorum of this epoch's voters and of the previous epoch's
+     */
+    public boolean isFastQuorum(Collection<String> members) {
+        return count(voters, members) >= fastQuorumSize() && count(previousVoters, members) >= (3 * previousVoters.size() + 3) / 4;
+    }
+
+    /**
+     * @return true if the voters changed from the previous epoch so ballots need a quorum of both
+     */
+    public boolean isJoint() {
+        return !previousVoters.equals(voters);
+    }
+
+    /**
+     * @return this epoch's membership counting only its own voters - for ballots that can never be in another epoch
+     */
+    public Membership settled() {
+        return new Membership(epoch, remaining(), voters, learners, voters);
+    }
+
+    /**
+     * @return the addresses without the voters removed by the change this epoch started with
+     */
+    private Map<String, InetSocketAddress> remaining() {
+        Map<String, InetSocketAddress> remaining = new LinkedHashMap<>(addresses);
+        for (String id : previousVoters) {
+            if (!voters.contains(id)) remaining.remove(id);
+        }
+        return remaining;
+    }
+
+    /**
+     * @return the voters of this and the previous epoch - every member whose votes count in this epoch's ballots
+     */
+    public Set<String> getBallotVoters() {
+        Set<String> all = new TreeSet<>(voters);
+        all.addAll(previousVoters);
+        return all;
+    }
+
+    private static int count(Set<String> voters, Collection<String> members) {
+        int count = 0;
+        for (String member : members) {
+            if (voters.contains(member)) count++;
+        }
+        return count;
+    }
+
+    /**
+     * @return majority of the voting members i.e. (N/2)+1
+     */
+    public int quorumSize() {
+        return (voters.size() / 2) + 1;
+    }
+
+    /**
+     * @return fast quorum of the voting members i.e. ceil(3N/4)
+     */
+    public int fastQuorumSize() {
+        return (3 * voters.size() + 3) / 4;
+    }
+
+    /**
+     * @return the snapshot for the next epoch with no change in members
+     */
+    public Membership advance() {
+        return new Membership(epoch + 1, remaining(), voters, learners, voters);
+    }
+
+    /**
+     * Applies a membership change creating the snapshot for the next epoch.
+     * Supported changes: {@code ADD <id> <host> <port> [learner]}, {@code PROMOTE <id>}, {@code REMOVE <id>} and
+     * {@code SETTLE}
+     *
+     * @param change the change command
+     * @return the next membership or null if the change is not valid
+     */
+    public Membership apply(String change) {
+        if (change == null) return null;
+        String[] parts = change.trim().split("\\s+");
+        Map<String, InetSocketAddress> nextAddresses = remaining();
+        Set<String> nextVoters = new TreeSet<>(voters);
+        Set<String> nextLearners = new TreeSet<>(learners);
+
+        try {
+            switch (parts[0].toUpperCase()) {
+                case "ADD" -> {
+                    if (parts.length == 5 && parts[4].equalsIgnoreCase("learner")) nextLearners.add(parts[1]);
+                    else if (parts.length != 4) return null;
+                    // new members catch up before counting toward quorums
+                    nextAddresses.put(parts[1], new InetSocketAddress(parts[2], Integer.parseInt(parts[3])));
+                }
+                case "PROMOTE" -> {
+                    if (parts.length != 2 || !nextAddresses.containsKey(parts[1])) return null;
+                    nextVoters.add(parts[1]);
+                    nextLearners.remove(parts[1]);
+                }
+                case "REMOVE" -> {
+                    if (parts.length != 2) return null;
+                    // a voter stays addressable as its vote is still needed in the joint configuration
+                    if (!nextVoters.remove(parts[1])) nextAddresses.remove(parts[1]);
+                    nextLearners.remove(parts[1]);
+                }
+                case SETTLE -> {
+                    if (parts.length != 1) return null;
+                }
+                default -> {
+                    return null;
+                }
+            }
+        } catch (NumberFormatException e) {
+            return null;
+        }
+
+        return new Membership(epoch + 1, nextAddresses, nextVoters, nextLearners, voters);
+    }
+}
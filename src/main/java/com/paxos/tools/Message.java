@@ -1,5 +1,7 @@
 package com.paxos.tools;
 
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -15,7 +17,22 @@ public class Message {
         NACK,
         LEARN,
         LEARN_ACK,
-        VALUE
+        VALUE,
+        RECONFIG,
+        SYNC,
+        SNAPSHOT,
+        STATE_REQUEST,
+        STATE,
+        SUBSCRIBE,
+        HEARTBEAT,
+        CHUNK,
+        FETCH,
+        SKIP,
+        CAS_PREPARE,
+        CAS_PROMISE,
+        CAS_ACCEPT,
+        CAS_ACCEPTED,
+        CAS_NACK
     }
 
     final MessageType type;
@@ -24,6 +41,12 @@ public class Message {
     final String proposalValue;
     final String acceptedNumber;
     final String acceptedValue;
+    final String groupId;
+    final String replyTo;
+    final String epoch; // configuration epoch of the ballot - null for messages outside a round
+
+    // wire frame encoded on first send - shared read-only by every peer the message is sent to
+    private volatile ByteBuffer frame;
 
     public MessageType getType() {
         return type;
@@ -49,6 +72,18 @@ public class Message {
         return acceptedValue;
     }
 
+    public String getGroupId() {
+        return groupId;
+    }
+
+    public String getReplyTo() {
+        return replyTo;
+    }
+
+    public String getEpoch() {
+        return epoch;
+    }
+
     public Message(
             MessageType type,
             String sender,
@@ -56,6 +91,45 @@ public class Message {
             String proposalValue,
             String acceptedNumber,
             String acceptedValue
+    ) {
+        this(type, sender, proposalNumber, proposalValue, acceptedNumber, acceptedValue, null);
+    }
+
+    public Message(
+            MessageType type,
+            String sender,
+            String proposalNumber,
+            String proposalValue,
+            String acceptedNumber,
+            String acceptedValue,
+            String groupId
+    ) {
+        this(type, sender, proposalNumber, proposalValue, acceptedNumber, acceptedValue, groupId, null);
+    }
+
+    public Message(
+            MessageType type,
+            String sender,
+            String proposalNumber,
+            String proposalValue,
+            String acceptedNumber,
+            String acceptedValue,
+            String groupId,
+            String replyTo
+    ) {
+        this(type, sender, proposalNumber, proposalValue, acceptedNumber, acceptedValue, groupId, replyTo, null);
+    }
+
+    public Message(
+            MessageType type,
+            String sender,
+            String proposalNumber,
+            String proposalValue,
+            String acceptedNumber,
+            String acceptedValue,
+            String groupId,
+            String replyTo,
+            String epoch
     ) {
         this.type = type;
         this.sender = sender;
@@ -63,6 +137,44 @@ public class Message {
         this.proposalValue = proposalValue;
         this.acceptedNumber = acceptedNumber;
         this.acceptedValue = acceptedValue;
+        this.groupId = groupId;
+        this.replyTo = replyTo;
+        this.epoch = epoch;
+    }
+
+    /**
+     * Creates a copy of the message with different proposal and accepted values
+     *
+     * @param proposalValue the new proposal value
+     * @param acceptedValue the new accepted value
+     * @return the copy
+     */
+    public Message withValues(String proposalValue, String acceptedValue) {
+        return new Message(type, sender, proposalNumber, proposalValue, acceptedNumber, acceptedValue, groupId, replyTo, epoch);
+    }
+
+    /**
+     * Creates a copy of the message tagged with the configuration epoch of its ballot
+     *
+     * @param epoch the epoch
+     * @return the copy
+     */
+    public Message withEpoch(String epoch) {
+        return new Message(type, sender, proposalNumber, proposalValue, acceptedNumber, acceptedValue, groupId, replyTo, epoch);
+    }
+
+    /**
+     * Gets the wire frame of the message (json plus newline) - encoded once and then shared by every send and retry
+     *
+     * @return a read-only view of the frame with its own position so it can be written independently
+     */
+    public ByteBuffer toFrame() {
+        ByteBuffer encoded = frame;
+        if (encoded == null) {
+            encoded = ByteBuffer.wrap((toString() + "\n").getBytes(StandardCharsets.UTF_8)).asReadOnlyBuffer();
+            frame = encoded;
+        }
+        return encoded.duplicate();
     }
 
     /**
@@ -77,6 +189,9 @@ public class Message {
         if (proposalValue != null) componentMap.put("proposalValue", proposalValue);
         if (acceptedNumber != null) componentMap.put("acceptedNumber", acceptedNumber);
         if (acceptedValue != null) componentMap.put("acceptedValue", acceptedValue);
+        if (groupId != null) componentMap.put("groupId", groupId);
+        if (replyTo != null) componentMap.put("replyTo", replyTo);
+        if (epoch != null) componentMap.put("epoch", epoch);
 
         return SimpleJsonUtil.stringify(componentMap);
     }
@@ -95,7 +210,10 @@ public class Message {
                 parsed.get("proposalNumber"),
                 parsed.get("proposalValue"),
                 parsed.get("acceptedNumber"),
-                parsed.get("acceptedValue")
+                parsed.get("acceptedValue"),
+                parsed.get("groupId"),
+                parsed.get("replyTo"),
+                parsed.get("epoch")
         );
     }
 
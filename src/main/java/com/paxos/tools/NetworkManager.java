@@ -4,9 +4,11 @@ import com.paxos.Paxos;
 
 import java.io.*;
 import java.net.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Paths;
 import java.util.*;
 import java.util.concurrent.*;
-import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * Manages PAXOS communication
@@ -18,31 +20,139 @@ public class NetworkManager {
     private ServerSocket serverSocket;
     private boolean running = false;
     private final ExecutorService executor = Executors.newCachedThreadPool();
+    private final ScheduledExecutorService heartbeatScheduler = Executors.newSingleThreadScheduledExecutor();
 
     private final Paxos messageHandler;
     private final ProfileManager profileManager;
 
-    private final Map<String, AtomicBoolean> memberAccessibility = new HashMap<>();
-    private final Map<String, InetSocketAddress> memberAddresses = new HashMap<>();
+    private volatile Membership membership;
+    // epoch -> membership of every epoch seen, so votes are counted with the configuration of their ballot
+    private final Map<Integer, Membership> epochs = new ConcurrentHashMap<>();
+    private final Map<String, PeerSender> senders = new ConcurrentHashMap<>();
+    private final Map<String, Long> heartbeatsSent = new ConcurrentHashMap<>(); // member -> time of the last heartbeat
+    private final PayloadStore payloads;
+    // learner -> time its subscription to this voter's decisions lapses
+    private final Map<String, Long> subscribedLearners = new ConcurrentHashMap<>();
+    private SharedMemoryTransport sharedMemory = null;
 
-    private static final int MAX_RETRIES = 4; // max connection retries
-    private static final int BASE_TIMEOUT = 125; // 125ms base timeout
+    private static final int HEARTBEAT_INTERVAL = 500; // 500ms between heartbeats
+    private static final int HEARTBEAT_TICK = 50; // how often idle members are checked for
+    private static final long FEED_LEASE = 3000; // ms a learner's subscription lasts unless renewed
+    private static final int PAYLOAD_SWEEP_INTERVAL = 1000; // ms between re-fetching missing and evicting idle payloads
 
-    public NetworkManager(String memberId, ProfileManager.MemberProfile profile, String configPath, Paxos messageHandler) {
+    // Failure Detection
+    private final FailureDetector failureDetector = new FailureDetector(HEARTBEAT_INTERVAL);
+    private final Set<String> suspectedMembers = ConcurrentHashMap.newKeySet();
+
+    public NetworkManager(String memberId, ProfileManager.MemberProfile profile, String configPath, boolean joining, Paxos messageHandler) {
+        this(memberId, profile, readConfig(configPath), joining, messageHandler);
+    }
+
+    public NetworkManager(String memberId, ProfileManager.MemberProfile profile, Membership initial, boolean joining,
+                          Paxos messageHandler) {
         this.memberId = memberId;
-        this.port = readConfig(memberId, configPath);
+        this.port = initMembership(memberId, initial, joining);
         if (this.port == -1) throw new RuntimeException("[NetworkManager] Error: Config File Not found!");
-        this.profileManager = new ProfileManager(profile, getClusterSize());
+        this.profileManager = new ProfileManager(memberId, profile, getClusterSize());
         this.messageHandler = messageHandler;
+        this.payloads = new PayloadStore(memberId);
+        // before any transport runs so the first received message is not held up registering the trace events
+        TraceEvents.register();
     }
 
     /**
      * get the cluster size
      *
-     * @return the number of members in the cluster
+     * @return the number of voting members in the cluster
      */
     public int getClusterSize() {
-        return memberAddresses.size();
+        return membership.getVoters().size();
+    }
+
+    /**
+     * @param id member to check
+     * @return true if the member counts toward quorums in the current configuration
+     */
+    public boolean isVoter(String id) {
+        return membership.isVoter(id);
+    }
+
+    /**
+     * @param id member to check
+     * @return true if the member is a non-voting learner
+     */
+    public boolean isLearner(String id) {
+        return membership.isLearner(id);
+    }
+
+    /**
+     * @return the current membership snapshot
+     */
+    public Membership getMembership() {
+        return membership;
+    }
+
+    /**
+     * @param epoch the configuration epoch
+     * @return the membership of the epoch or null if this member has not reached it
+     */
+    public Membership getMembership(int epoch) {
+        return epochs.get(epoch);
+    }
+
+    /**
+     * Applies a committed membership change - peer map and quorum sizes are swapped atomically
+     *
+     * @param change the committed change command
+     */
+    public synchronized void applyMembershipChange(String change) {
+        Membership next = membership.apply(change);
+        if (next == null) {
+            Logger.log("[applyMembershipChange] Ignoring invalid change: " + change);
+            next = membership.advance();
+        }
+        setMembership(next);
+    }
+
+    /**
+     * Switches to a membership snapshot e.g. one a change committed earlier takes effect with
+     *
+     * @param next the membership to switch to
+     */
+    public synchronized void setMembership(Membership next) {
+        membership = next;
+        epochs.put(next.getEpoch(), next);
+
+        // stop the senders of removed members
+        for (String id : new ArrayList<>(senders.keySet())) {
+            if (!next.getAddresses().containsKey(id)) senders.remove(id).stop();
+        }
+        heartbeatsSent.keySet().retainAll(next.getAddresses().keySet());
+        Logger.log("[setMembership] Epoch " + next.getEpoch() + " members=" + next.getAddresses().keySet() +
+                " voters=" + next.getVoters());
+    }
+
+    /**
+     * Sends to members on this host through shared memory rings instead of TCP - must be called before the server starts
+     *
+     * @param dir the directory shared by the members holding the ring files
+     * @throws IOException if the directory cannot be created
+     */
+    public void enableSharedMemory(String dir) throws IOException {
+        sharedMemory = new SharedMemoryTransport(memberId, Paths.get(dir), this::localMembers, this::receiveLine,
+                failureDetector::heartbeat);
+        Logger.log("[enableSharedMemory] Using shared memory rings in " + dir + " for local members");
+    }
+
+    /**
+     * @return ids of the members on this host
+     */
+    private Set<String> localMembers() {
+        Set<String> local = new HashSet<>();
+        for (Map.Entry<String, InetSocketAddress> e : membership.getAddresses().entrySet()) {
+            if (SharedMemoryTransport.isLocal(e.getValue())) local.add(e.getKey());
+        }
+        return local;
     }
 
     /**
@@ -54,6 +164,9 @@ public class NetworkManager {
         serverSocket = new ServerSocket(port);
         running = true;
         executor.submit(this::acceptLoop);
+        heartbeatScheduler.scheduleAtFixedRate(this::sendHeartbeats, HEARTBEAT_TICK, HEARTBEAT_TICK, TimeUnit.MILLISECONDS);
+        heartbeatScheduler.scheduleAtFixedRate(() -> payloads.expire(System.currentTimeMillis(), this::sendMessage),
+                PAYLOAD_SWEEP_INTERVAL, PAYLOAD_SWEEP_INTERVAL, TimeUnit.MILLISECONDS);
         Logger.log("[startServer] NetworkManager for " + memberId + " listening on port " + port);
     }
 
@@ -85,18 +198,11 @@ public class NetworkManager {
             try {
                 String line;
                 while ((line = in.readLine()) != null) {
-                    if (!line.contains("VALUE")  && profileManager.shouldFail()){
-                        // simulate drop message (message not received)
-                        Logger.log("[handleClient] Simulating dropped message");
-                        continue;
+                    try {
+                        receiveLine(line);
+                    } catch (RuntimeException e) {
+                        Logger.log("[handleClient] Failed to handle message: " + e);
                     }
-                    Message msg = Message.fromJson(line);
-                    if (msg.getSender() != null)
-                        memberAccessibility.get(msg.getSender()).set(true);
-
-                    // simulate send delay
-                    profileManager.simulateDelay();
-                    messageHandler.onMessage(msg);
                 }
                 in.close();
             } catch (IOException e) {
@@ -106,6 +212,65 @@ public class NetworkManager {
         }
     }
 
+    /**
+     * Handles a received message line from any transport
+     *
+     * @param line the json message
+     */
+    private void receiveLine(String line) {
+        if (!line.contains("VALUE")  && profileManager.shouldFail()){
+            // simulate drop message (message not received)
+            Logger.log("[handleClient] Simulating dropped message");
+            TraceEvents.messageDropped(memberId, line);
+            return;
+        }
+        Message msg;
+        try {
+            msg = Message.fromJson(line);
+        } catch (RuntimeException e) {
+            Logger.log("[receiveLine] Dropping malformed message: " + e.getMessage());
+            return;
+        }
+        if (msg.getSender() != null && membership.getAddresses().containsKey(msg.getSender()))
+            failureDetector.heartbeat(msg.getSender());
+        if (msg.getType() == Message.MessageType.HEARTBEAT) return;
+
+        for (Message ready : receivePayloads(msg)) {
+            TraceEvents.messageReceived(memberId, ready);
+            // simulate send delay - delivery is scheduled so later messages are not held up
+            profileManager.simulateDelay(ready.getSender(), ready, () -> messageHandler.onMessage(ready));
+        }
+    }
+
+    /**
+     * Handles the large value transfer of an incoming message - chunks are reassembled and references resolved
+     *
+     * @param msg the incoming message
+     * @return the messages that are ready to be handled
+     */
+    private List<Message> receivePayloads(Message msg) {
+        switch (msg.getType()) {
+            case CHUNK -> {
+                List<Message> ready = new ArrayList<>();
+                for (Message released : payloads.onChunk(msg)) {
+                    ready.addAll(receivePayloads(released));
+                }
+                return ready;
+            }
+            case FETCH -> {
+                PeerSender sender = msg.getSender() == null ? null : getSender(msg.getSender());
+                if (sender != null) sender.offer(payloads.onFetch(msg));
+                return List.of();
+            }
+            default -> {
+                List<Message> fetches = new ArrayList<>();
+                Message resolved = payloads.inbound(msg, fetches);
+                for (Message fetch : fetches) sendMessage(msg.getSender(), fetch);
+                return resolved == null ? List.of() : List.of(resolved);
+            }
+        }
+    }
+
     /**
      * Closes the port - stops the server
      */
@@ -115,115 +280,305 @@ public class NetworkManager {
             if (serverSocket != null) serverSocket.close();
         } catch (IOException ignored) {}
         executor.shutdownNow();
+        heartbeatScheduler.shutdownNow();
+        senders.values().forEach(PeerSender::stop);
+        profileManager.stop();
+        if (sharedMemory != null) sharedMemory.stop();
     }
 
     /**
-     * Send a message to a member using their memberId
+     * Send a message to a member using their memberId - the message is queued for the member's sender thread
      *
      * @param targetMemberId the member to send the message to
      * @param msg the message to send
+     * @return false if the message was not queued (unknown, suspected or backpressured member)
      */
-    public void sendMessage(String targetMemberId, Message msg) {
-        AtomicBoolean accessible = memberAccessibility.get(targetMemberId);
-        InetSocketAddress addr = memberAddresses.get(targetMemberId);
+    public boolean sendMessage(String targetMemberId, Message msg) {
+        InetSocketAddress addr = membership.getAddresses().get(targetMemberId);
         if (addr == null) {
             Logger.log("[sendMessage] Unknown memberId: " + targetMemberId);
-            return;
+            return false;
         }
-        if (!accessible.get()){
+        if (!failureDetector.isAvailable(targetMemberId)){
             Logger.log("[sendMessage] Inaccessible Target: " + targetMemberId + " not sending message");
-            return;
+            return false;
+        }
+        // large values are streamed ahead as chunks and replaced by a reference
+        List<Message> chunks = new ArrayList<>();
+        Message outbound = payloads.outbound(targetMemberId, msg, chunks);
+        chunks.add(outbound);
+
+        if (!getSender(targetMemberId).offer(chunks)) {
+            payloads.unsent(targetMemberId, chunks);
+            Logger.log("[sendMessage] Outbound queue full for " + targetMemberId + " dropping " + msg.getType());
+            return false;
         }
-        executor.execute(() -> sendMessageToAddress(targetMemberId, addr, msg));
+        TraceEvents.messageSent(memberId, targetMemberId, msg);
+        return true;
     }
 
     /**
-     * sends a message to an address
+     * Gets the outbound sender for a member creating it on first use
      *
-     * @param targetId the target the message is being sent to
-     * @param addr address to send to
-     * @param msg the message to send
+     * @param targetId the member to send to
+     * @return the member's sender
+     */
+    private PeerSender getSender(String targetId) {
+        return senders.computeIfAbsent(targetId, id -> new PeerSender(memberId, id,
+                () -> membership.getAddresses().get(id), profileManager, failureDetector::suspect,
+                SharedMemoryTransport.isLocal(membership.getAddresses().get(id)) ? sharedMemory : null));
+    }
+
+    /**
+     * broadcast a message to all members - the message is encoded once and its frame shared by every peer's writer
+     *
+     * @param msg the message to be broadcast
+     * @return the number of members the message was queued for
+     */
+    public int broadcast(Message msg) {
+        // learners only receive decisions, they never pass them on
+        if (msg.getType() == Message.MessageType.LEARN && membership.isLearner(memberId)) return 0;
+
+        int queued = 0;
+        for (String targetId : membership.getAddresses().keySet()) {
+            if (!targetId.equals(memberId) && failureDetector.isAvailable(targetId) && shouldSendTo(targetId, msg)) {
+                Logger.log("[broadcast] Broadcasting " + msg.getType() + " from " + memberId + " to " + targetId);
+                if (sendMessage(targetId, msg)) queued++;
+            }
+        }
+        return queued;
+    }
+
+    /**
+     * Learners take no part in rounds, they are streamed decisions by the voters they subscribed to
+     * instead of receiving every member's LEARN
+     *
+     * @param targetId the member being broadcast to
+     * @param msg the message being broadcast
+     * @return true if the message should be sent to the member
+     */
+    private boolean shouldSendTo(String targetId, Message msg) {
+        if (!membership.isLearner(targetId)) return true;
+        return switch (msg.getType()) {
+            case PREPARE, ACCEPT_REQUEST, ACCEPTED, CAS_PREPARE, CAS_ACCEPT -> false;
+            case LEARN -> isSubscribed(targetId);
+            default -> true;
+        };
+    }
+
+    /**
+     * Gets the voter a learner subscribes to - picked by the learner with its own failure detector as the first
+     * voter after it in id order that it does not suspect, so learners are spread over the voters and move on when
+     * theirs becomes unreachable from them
+     *
+     * @param learnerId the learner
+     * @return id of the voter to subscribe to
+     */
+    public String getFeedSource(String learnerId) {
+        return getRetryProposer(learnerId, 0);
+    }
+
+    /**
+     * Streams this voter's decisions to a learner until its subscription lapses - learners keep renewing it with
+     * their feed source, so it lapses at a voter the learner moved away from
+     *
+     * @param learnerId the subscribing learner
+     * @return true if the learner was not subscribed, so it must be sent everything decided so far
+     */
+    public boolean subscribeLearner(String learnerId) {
+        long now = System.currentTimeMillis();
+        Long previous = subscribedLearners.put(learnerId, now + FEED_LEASE);
+        return previous == null || previous < now;
+    }
+
+    private boolean isSubscribed(String learnerId) {
+        Long until = subscribedLearners.get(learnerId);
+        return until != null && until >= System.currentTimeMillis();
+    }
+
+    /**
+     * Checks whether enough voters can take more outbound messages for a new round to reach a quorum
+     *
+     * @return false if too many outbound queues are full (backpressure)
      */
-    private void sendMessageToAddress(String targetId, InetSocketAddress addr, Message msg) {
-        // do send delay
-        profileManager.simulateDelay();
+    public boolean hasCapacity() {
+        int ready = membership.isVoter(memberId) ? 1 : 0;
+        for (String voter : membership.getVoters()) {
+            if (voter.equals(memberId) || !failureDetector.isAvailable(voter)) continue;
+            PeerSender sender = senders.get(voter);
+            if (sender == null || !sender.isFull()) ready++;
+        }
+        return ready >= membership.quorumSize();
+    }
+
+    /**
+     * Sends a lightweight heartbeat to every member (suspected or not) and logs suspicion changes.
+     * Heartbeats are sent once without retries or simulated faults - a member reading its shared memory ring is
+     * monitored through the ring's stamps instead. Every message counts as a heartbeat at the receiver, so one is
+     * only sent to a member nothing was written to for about an interval - checked every tick so no gap is longer.
+     */
+    private void sendHeartbeats() {
+        // encoded once and shared by every peer
+        Message heartbeat = new Message(Message.MessageType.HEARTBEAT, memberId, null, null, null, null);
+        long now = System.currentTimeMillis();
+        for (Map.Entry<String, InetSocketAddress> e : membership.getAddresses().entrySet()) {
+            String targetId = e.getKey();
+            if (targetId.equals(memberId)) continue;
+            failureDetector.monitor(targetId);
+
+            PeerSender sender = senders.get(targetId);
+            long lastSent = Math.max(sender != null ? sender.getLastSent() : 0, heartbeatsSent.getOrDefault(targetId, 0L));
+            if (now - lastSent >= HEARTBEAT_INTERVAL - HEARTBEAT_TICK &&
+                    (sharedMemory == null || !sharedMemory.isReading(targetId))) {
+                heartbeatsSent.put(targetId, now);
+                executor.execute(() -> {
+                    InetSocketAddress addr = e.getValue();
+                    try (SocketChannel channel = SocketChannel.open(addr)) {
+                        ByteBuffer frame = heartbeat.toFrame();
+                        while (frame.hasRemaining()) channel.write(frame);
+                    } catch (IOException ignored) {}
+                });
+            }
+
+            boolean available = failureDetector.isAvailable(targetId);
+            if (!available && suspectedMembers.add(targetId)) {
+                Logger.log("[sendHeartbeats] Suspecting " + targetId + " phi=" + failureDetector.phi(targetId));
+            } else if (available && suspectedMembers.remove(targetId)) {
+                Logger.log("[sendHeartbeats] " + targetId + " is available again phi=" + failureDetector.phi(targetId));
+            }
+        }
+    }
 
-        for (int i = 0; i < MAX_RETRIES; i++){
-            try (Socket socket = new Socket(addr.getHostString(), addr.getPort());
+    /**
+     * Sends a one-off message to a client address (e.g. a decision notification), sent once without retries
+     *
+     * @param address the client address in the form {@code host:port}
+     * @param msg the message to send
+     */
+    public void reply(String address, Message msg) {
+        int split = address.lastIndexOf(':');
+        if (split <= 0) {
+            Logger.log("[reply] Invalid reply address: " + address);
+            return;
+        }
+        executor.execute(() -> {
+            try (Socket socket = new Socket(address.substring(0, split), Integer.parseInt(address.substring(split + 1)));
                  BufferedWriter out = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream()))) {
                 out.write(msg.toString());
                 out.newLine();
                 out.flush();
+            } catch (IOException | NumberFormatException e) {
+                Logger.log("[reply] Failed to reply to " + address + ": " + e.getMessage());
+            }
+        });
+    }
 
-                Logger.log("[sendMessageToAddress] Sent " + msg.getType() + " from " + memberId + " to " + addr.getHostString() + ":" + addr.getPort());
+    /**
+     * @param id member to check
+     * @return true if the failure detector suspects the member
+     */
+    public boolean isSuspected(String id) {
+        return !id.equals(memberId) && !failureDetector.isAvailable(id);
+    }
 
-                if (profileManager.shouldCrash()){
-                    Logger.log("[sendMessageToAddress] Simulating crash");
-                    System.exit(0);
-                }
-                return;
-            } catch (IOException e) {
-                if (i == MAX_RETRIES - 1) {
-                    // message couldn't be sent mark as inaccessible
-                    memberAccessibility.get(targetId).set(false);
-                    break;
-                }
-                int timeout = ThreadLocalRandom.current().nextInt((int) (BASE_TIMEOUT * Math.pow(2, i)));
-                Logger.log("[sendMessageToAddress] Failed to send message to " + addr + " trying again after " + timeout + "ms");
-                try {Thread.sleep(timeout);} catch (InterruptedException ignored) {}
-            }
+    /**
+     * @return the current phi-accrual suspicion level per member
+     */
+    public Map<String, Double> getSuspicionLevels() {
+        return failureDetector.suspicionLevels();
+    }
+
+    /**
+     * Gets the current leader - the lowest id voter that is not suspected
+     *
+     * @return id of the leader
+     */
+    public String getLeader() {
+        for (String voter : membership.getVoters()) {
+            if (voter.equals(memberId) || failureDetector.isAvailable(voter)) return voter;
         }
+        return memberId;
     }
 
     /**
-     * broadcast a message to all members
+     * Gets the member whose turn it is to retry a stalled round - the first unsuspected voter at or after
+     * {@code start} in id order, each further attempt moves the turn one member along the ring
+     * so only one member retries at a time
      *
-     * @param msg the message to be broadcast
+     * @param start the member to start from (e.g. the leader or a slot owner)
+     * @param attempt the number of earlier retry attempts
+     * @return id of the member that should retry
      */
-    public void broadcast(Message msg) {
-        for (String targetId : memberAddresses.keySet()) {
-            if (!targetId.equals(memberId) && memberAccessibility.get(targetId).get()) {
-                Logger.log("[broadcast] Broadcasting " + msg.getType() + " from " + memberId + " to " + targetId);
-                sendMessage(targetId, msg);
-            }
+    public String getRetryProposer(String start, int attempt) {
+        List<String> ring = new ArrayList<>();
+        List<String> wrapped = new ArrayList<>();
+        for (String voter : membership.getVoters()) {
+            if (!voter.equals(memberId) && !failureDetector.isAvailable(voter)) continue;
+            if (voter.compareTo(start) >= 0) ring.add(voter);
+            else wrapped.add(voter);
         }
+        ring.addAll(wrapped);
+        if (ring.isEmpty()) return memberId;
+        return ring.get(attempt % ring.size());
     }
 
     /**
-     * Reads config file building member address map and returning the port to use
+     * Reads config file building the initial membership - members marked {@code learner} do not vote
      *
-     * @param memberId id of current paxos member
      * @param configPath path to config file
-     * @return the port to use or -1 if no port was found / error occurred
+     * @return the epoch 0 membership or null if the file could not be read
      */
-    private int readConfig(String memberId, String configPath) {
+    public static Membership readConfig(String configPath) {
+        Map<String, InetSocketAddress> memberAddresses = new LinkedHashMap<>();
+        Set<String> learners = new TreeSet<>();
         try (BufferedReader reader = new BufferedReader(new FileReader(configPath))) {
             String line;
             while ((line = reader.readLine()) != null) {
                 line = line.trim();
                 if (line.isEmpty() || line.startsWith("#")) continue;
 
-                // line format: {name} {uri} {port}
+                // line format: {name} {uri} {port} [learner]
                 String[] parts = line.split("\\s+");
-                if (parts.length != 3) continue;
+                if (parts.length != 3 && parts.length != 4) continue;
 
                 String id = parts[0].trim();
                 String host = parts[1].trim();
                 int memberPort = Integer.parseInt(parts[2].trim());
 
                 memberAddresses.put(id, new InetSocketAddress(host, memberPort));
-                memberAccessibility.put(id, new AtomicBoolean(true));
+                if (parts.length == 4 && parts[3].equalsIgnoreCase("learner")) learners.add(id);
             }
-
             Logger.log("[readConfig] Loaded " + memberAddresses.size() + " members from config.");
-            for (Map.Entry<String, InetSocketAddress> e : memberAddresses.entrySet()) {
-                Logger.log("[readConfig] " + e.getKey() + " -> " + e.getValue());
-            }
         } catch (IOException e) {
             Logger.log("[readConfig] Failed to read config: " + e.getMessage());
-            return -1;
+            return null;
         }
 
-        return memberAddresses.containsKey(memberId) ? memberAddresses.get(memberId).getPort() : -1;
+        Set<String> voters = new TreeSet<>(memberAddresses.keySet());
+        voters.removeAll(learners);
+        return new Membership(0, memberAddresses, voters, learners);
+    }
+
+    /**
+     * Sets the initial membership returning the port to use
+     *
+     * @param memberId id of current paxos member
+     * @param initial the configured membership
+     * @param joining true if this member is joining a running cluster and must catch up before voting
+     * @return the port to use or -1 if the member is not in the config
+     */
+    private int initMembership(String memberId, Membership initial, boolean joining) {
+        if (initial == null) return -1;
+
+        Set<String> voters = new TreeSet<>(initial.getVoters());
+        if (joining) voters.remove(memberId);
+        membership = new Membership(0, initial.getAddresses(), voters, initial.getLearners());
+        epochs.put(0, membership);
+
+        for (Map.Entry<String, InetSocketAddress> e : membership.getAddresses().entrySet()) {
+            Logger.log("[readConfig] " + e.getKey() + " -> " + e.getValue() + (membership.isLearner(e.getKey()) ? " (learner)" : ""));
+        }
+        InetSocketAddress own = membership.getAddresses().get(memberId);
+        return own != null ? own.getPort() : -1;
     }
 }
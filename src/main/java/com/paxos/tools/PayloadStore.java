@@ -0,0 +1,360 @@
+package com.paxos.tools;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.function.BiConsumer;
+import java.util.zip.Inflater;
+
+/**
+ * Content addressed store for large proposal values.
+ * Large values are compressed and streamed to each peer once as CHUNK messages,
+ * after which round messages only carry a reference to the content hash.
+ * A missing value is fetched from the peer that referenced it and fetched again until it arrives or the messages
+ * waiting on it are given up. Values not used for a while are evicted - a peer missing one fetches it again.
+ */
+class PayloadStore {
+    static final int LARGE_VALUE_SIZE = 4096; // values at least this long are sent by reference
+    private static final int CHUNK_SIZE = 64 * 1024; // encoded characters per CHUNK message
+    private static final int MAX_PARKED = 1024; // max messages waiting for a payload
+    private static final long FETCH_TIMEOUT = 1000; // ms before a missing value is fetched again
+    private static final int MAX_FETCHES = 5; // fetches before the messages waiting on a value are dropped
+    private static final long VALUE_TTL = 60_000; // ms a value is kept after it was last used
+    private static final int MAX_VALUES = 1024; // values kept - the least recently used are evicted beyond this
+    private static final String REF_PREFIX = "#ref:";
+
+    private final String memberId;
+
+    // hash -> value of every large value seen and not evicted
+    private final Map<String, String> values = new ConcurrentHashMap<>();
+    // hash -> time the value was last sent, resolved or received
+    private final Map<String, Long> lastUsed = new ConcurrentHashMap<>();
+    // hashes of values first seen locally - only their origin pushes them to peers
+    private final Set<String> originated = ConcurrentHashMap.newKeySet();
+    // hash -> peers known to hold the value
+    private final Map<String, Set<String>> knownBy = new ConcurrentHashMap<>();
+    // hash -> chunks received so far
+    private final Map<String, String[]> reassembly = new HashMap<>();
+    // hash -> messages waiting on the value
+    private final Map<String, List<Message>> parked = new HashMap<>();
+    private int parkedCount = 0;
+    // hash -> outstanding fetch of a missing value
+    private final Map<String, Fetch> fetching = new HashMap<>();
+    // the last referenced message so a broadcast shares one copy (and one encoded frame) across peers
+    private Message lastOriginal;
+    private Message lastReferenced;
+
+    /**
+     * A missing value being fetched - guarded by the parked lock
+     */
+    private static class Fetch {
+        String source; // the peer that last referenced the value
+        long sentAt;
+        int attempts = 1;
+
+        Fetch(String source, long sentAt) {
+            this.source = source;
+            this.sentAt = sentAt;
+        }
+    }
+
+    PayloadStore(String memberId) {
+        this.memberId = memberId;
+    }
+
+    /**
+     * Converts a message for sending to a peer - large values are replaced by references.
+     * Chunks are returned for a peer that does not hold a locally originated value yet.
+     *
+     * @param targetId the peer being sent to
+     * @param msg the message to send
+     * @param chunks receives the CHUNK messages that must be sent ahead of the message
+     * @return the message to send
+     */
+    Message outbound(String targetId, Message msg, List<Message> chunks) {
+        String proposalValue = toReference(targetId, msg.getProposalValue(), chunks);
+        String acceptedValue = toReference(targetId, msg.getAcceptedValue(), chunks);
+        if (Objects.equals(proposalValue, msg.getProposalValue()) && Objects.equals(acceptedValue, msg.getAcceptedValue())) {
+            return msg;
+        }
+        synchronized (this) {
+            if (lastOriginal != msg) {
+                lastOriginal = msg;
+                lastReferenced = msg.withValues(proposalValue, acceptedValue);
+            }
+            return lastReferenced;
+        }
+    }
+
+    private String toReference(String targetId, String value, List<Message> chunks) {
+        if (!isLarge(value)) return value;
+
+        String hash = hash(value);
+        if (values.putIfAbsent(hash, value) == null) originated.add(hash);
+        lastUsed.put(hash, System.currentTimeMillis());
+        if (originated.contains(hash) && knownBy(hash).add(targetId)) {
+            chunks.addAll(chunk(hash, value));
+        }
+        return REF_PREFIX + hash;
+    }
+
+    /**
+     * Forgets that a peer was sent the chunks of its message because they were not queued - they are sent again
+     * with the next message referencing the value
+     *
+     * @param targetId the peer the message was for
+     * @param chunks the chunks returned by {@link #outbound}
+     */
+    void unsent(String targetId, List<Message> chunks) {
+        for (Message chunk : chunks) {
+            if (chunk.getType() != Message.MessageType.CHUNK) continue;
+            Set<String> peers = knownBy.get(chunk.getAcceptedValue());
+            if (peers != null) peers.remove(targetId);
+        }
+    }
+
+    /**
+     * Resolves the references of a received message
+     *
+     * @param msg the received message
+     * @param fetches receives the FETCH messages to request missing values from the sender
+     * @return the resolved message or null if it was parked until its values arrive
+     */
+    Message inbound(Message msg, List<Message> fetches) {
+        String missing = missingHash(msg.getProposalValue());
+        if (missing == null) missing = missingHash(msg.getAcceptedValue());
+
+        if (missing != null) {
+            synchronized (parked) {
+                long now = System.currentTimeMillis();
+                Fetch fetch = fetching.get(missing);
+                if (fetch == null) {
+                    fetching.put(missing, new Fetch(msg.getSender(), now));
+                    fetches.add(fetchMessage(missing));
+                } else {
+                    fetch.source = msg.getSender();
+                }
+                if (parkedCount < MAX_PARKED) {
+                    parked.computeIfAbsent(missing, h -> new ArrayList<>()).add(msg);
+                    parkedCount++;
+                } else {
+                    Logger.log("[PayloadStore] Too many messages waiting on payloads - dropping " + msg.getType());
+                }
+            }
+            return null;
+        }
+
+        String proposalValue = fromReference(msg.getSender(), msg.getProposalValue());
+        String acceptedValue = fromReference(msg.getSender(), msg.getAcceptedValue());
+        if ((proposalValue == null && msg.getProposalValue() != null) || (acceptedValue == null && msg.getAcceptedValue() != null)) {
+            // evicted since it was checked - wait for it like any other missing value
+            return inbound(msg, fetches);
+        }
+        if (Objects.equals(proposalValue, msg.getProposalValue()) && Objects.equals(acceptedValue, msg.getAcceptedValue())) {
+            return msg;
+        }
+        return msg.withValues(proposalValue, acceptedValue);
+    }
+
+    private String missingHash(String value) {
+        if (value == null || !value.startsWith(REF_PREFIX)) return null;
+        String hash = value.substring(REF_PREFIX.length());
+        return values.containsKey(hash) ? null : hash;
+    }
+
+    private String fromReference(String sender, String value) {
+        if (value == null || !value.startsWith(REF_PREFIX)) return value;
+        String hash = value.substring(REF_PREFIX.length());
+        // the sender clearly holds the value
+        if (sender != null) knownBy(hash).add(sender);
+        lastUsed.put(hash, System.currentTimeMillis());
+        return values.get(hash);
+    }
+
+    /**
+     * Handles a FETCH request for a value
+     *
+     * @param msg the FETCH message holding the hash
+     * @return the CHUNK messages to send back - empty if the value is unknown
+     */
+    List<Message> onFetch(Message msg) {
+        String hash = msg.getAcceptedValue();
+        String value = hash == null ? null : values.get(hash);
+        if (value == null) return List.of();
+        knownBy(hash).add(msg.getSender());
+        lastUsed.put(hash, System.currentTimeMillis());
+        return chunk(hash, value);
+    }
+
+    /**
+     * Handles a received CHUNK
+     *
+     * @param msg the CHUNK message
+     * @return the messages released once the value is complete - empty otherwise
+     */
+    List<Message> onChunk(Message msg) {
+        String hash = msg.getAcceptedValue();
+        int index, total;
+        try {
+            index = Integer.parseInt(msg.getProposalNumber());
+            total = Integer.parseInt(msg.getAcceptedNumber());
+        } catch (NumberFormatException e) {
+            return List.of();
+        }
+        if (hash == null || values.containsKey(hash) || index < 0 || index >= total) return List.of();
+
+        String encoded;
+        synchronized (parked) {
+            String[] parts = reassembly.computeIfAbsent(hash, h -> new String[total]);
+            if (parts.length != total) return List.of();
+            // a transfer that stops making progress is fetched again
+            Fetch fetch = fetching.computeIfAbsent(hash, h -> new Fetch(msg.getSender(), 0));
+            fetch.sentAt = System.currentTimeMillis();
+            parts[index] = msg.getProposalValue();
+            for (String part : parts) if (part == null) return List.of();
+            reassembly.remove(hash);
+            encoded = String.join("", parts);
+        }
+
+        String value = decompress(encoded);
+        if (value == null || !hash.equals(hash(value))) {
+            Logger.log("[PayloadStore] Discarding corrupt payload " + hash);
+            return List.of();
+        }
+        values.put(hash, value);
+        lastUsed.put(hash, System.currentTimeMillis());
+        knownBy(hash).add(msg.getSender());
+
+        synchronized (parked) {
+            fetching.remove(hash);
+            List<Message> released = parked.remove(hash);
+            if (released == null) return List.of();
+            parkedCount -= released.size();
+            return released;
+        }
+    }
+
+    /**
+     * Fetches missing values again once their fetch timed out - giving up on the messages waiting on a value after
+     * {@code MAX_FETCHES} - and evicts values not used within {@code VALUE_TTL} or beyond {@code MAX_VALUES}
+     *
+     * @param now the current time in ms
+     * @param send sends a FETCH to a peer
+     */
+    void expire(long now, BiConsumer<String, Message> send) {
+        Map<String, String> refetch = new HashMap<>();
+        synchronized (parked) {
+            Iterator<Map.Entry<String, Fetch>> it = fetching.entrySet().iterator();
+            while (it.hasNext()) {
+                Map.Entry<String, Fetch> e = it.next();
+                Fetch fetch = e.getValue();
+                if (now - fetch.sentAt < FETCH_TIMEOUT) continue;
+                if (fetch.attempts >= MAX_FETCHES) {
+                    it.remove();
+                    reassembly.remove(e.getKey());
+                    List<Message> dropped = parked.remove(e.getKey());
+                    if (dropped != null) parkedCount -= dropped.size();
+                    Logger.log("[PayloadStore] Giving up on payload " + e.getKey() + " dropping " +
+                            (dropped != null ? dropped.size() : 0) + " waiting messages");
+                    continue;
+                }
+                fetch.attempts++;
+                fetch.sentAt = now;
+                refetch.put(e.getKey(), fetch.source);
+            }
+        }
+        for (Map.Entry<String, String> e : refetch.entrySet()) {
+            if (e.getValue() != null) send.accept(e.getValue(), fetchMessage(e.getKey()));
+        }
+
+        List<Map.Entry<String, Long>> idle = new ArrayList<>(lastUsed.entrySet());
+        int excess = idle.size() - MAX_VALUES;
+        if (excess > 0) idle.sort(Map.Entry.comparingByValue());
+        for (Map.Entry<String, Long> e : idle) {
+            if (excess-- <= 0 && now - e.getValue() < VALUE_TTL) continue;
+            evict(e.getKey());
+        }
+    }
+
+    private void evict(String hash) {
+        lastUsed.remove(hash);
+        values.remove(hash);
+        originated.remove(hash);
+        knownBy.remove(hash);
+    }
+
+    private Message fetchMessage(String hash) {
+        return new Message(Message.MessageType.FETCH, memberId, null, null, null, hash);
+    }
+
+    private Set<String> knownBy(String hash) {
+        return knownBy.computeIfAbsent(hash, h -> ConcurrentHashMap.newKeySet());
+    }
+
+    /**
+     * Large values, and values that could be mistaken for a reference, are sent by reference
+     */
+    private static boolean isLarge(String value) {
+        return value != null && (value.length() >= LARGE_VALUE_SIZE || value.startsWith(REF_PREFIX));
+    }
+
+    /**
+     * Splits a compressed value into CHUNK messages
+     */
+    private List<Message> chunk(String hash, String value) {
+        String encoded = compress(value);
+        int total = Math.max(1, (encoded.length() + CHUNK_SIZE - 1) / CHUNK_SIZE);
+        List<Message> chunks = new ArrayList<>(total);
+        for (int i = 0; i < total; i++) {
+            String part = encoded.substring(i * CHUNK_SIZE, Math.min(encoded.length(), (i + 1) * CHUNK_SIZE));
+            chunks.add(new Message(Message.MessageType.CHUNK, memberId, String.valueOf(i), part, String.valueOf(total), hash));
+        }
+        return chunks;
+    }
+
+    static String hash(String value) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(value.getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    private static String compress(String value) {
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        deflater.setInput(value.getBytes(StandardCharsets.UTF_8));
+        deflater.finish();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        while (!deflater.finished()) {
+            out.write(buffer, 0, deflater.deflate(buffer));
+        }
+        deflater.end();
+        return Base64.getEncoder().encodeToString(out.toByteArray());
+    }
+
+    private static String decompress(String encoded) {
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(Base64.getDecoder().decode(encoded));
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            while (!inflater.finished()) {
+                int n = inflater.inflate(buffer);
+                if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) return null;
+                out.write(buffer, 0, n);
+            }
+            return out.toString(StandardCharsets.UTF_8);
+        } catch (DataFormatException | IllegalArgumentException e) {
+            return null;
+        } finally {
+            inflater.end();
+        }
+    }
+}
@@ -0,0 +1,234 @@
+package com.paxos.tools;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Bounded outbound queue for a single peer drained by a dedicated sender thread.
+ * Superseded messages for the same group are coalesced and queued messages are batched into one gathering write
+ * of their pre-encoded frames.
+ */
+class PeerSender {
+    private static final int QUEUE_CAPACITY = 512; // max messages waiting per peer
+    private static final int MAX_BATCH = 32; // max messages per write
+    private static final int MAX_RETRIES = 4; // max connection retries
+    private static final int BASE_TIMEOUT = 125; // 125ms base timeout
+
+    private final String memberId;
+    private final String targetId;
+    private final Supplier<InetSocketAddress> address;
+    private final ProfileManager profileManager;
+    private final Consumer<String> onUnreachable;
+    private final SharedMemoryTransport sharedMemory; // null unless the peer is on this host
+
+    private final LinkedList<Message> queue = new LinkedList<>();
+    private int delayed = 0; // offers waiting out their simulated send delay
+    private volatile long lastSent = 0; // time the last batch was written to the peer
+    private final Thread thread;
+    private volatile boolean running = true;
+
+    PeerSender(String memberId, String targetId, Supplier<InetSocketAddress> address, ProfileManager profileManager,
+               Consumer<String> onUnreachable, SharedMemoryTransport sharedMemory) {
+        this.memberId = memberId;
+        this.targetId = targetId;
+        this.address = address;
+        this.profileManager = profileManager;
+        this.onUnreachable = onUnreachable;
+        this.sharedMemory = sharedMemory;
+
+        this.thread = new Thread(this::sendLoop, "sender-" + targetId);
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    /**
+     * Queues a message, replacing any queued message it supersedes
+     *
+     * @param msg the message to send
+     * @return false if the queue is full (backpressure)
+     */
+    boolean offer(Message msg) {
+        return offer(List.of(msg));
+    }
+
+    /**
+     * Queues messages together after the simulated send delay - space for all of them is reserved now so
+     * backpressure is immediate and a message once accepted is never dropped for lack of space
+     *
+     * @param msgs the messages to send in order
+     * @return false if the queue has no space for all of them (backpressure)
+     */
+    boolean offer(List<Message> msgs) {
+        if (msgs.isEmpty()) return true;
+        synchronized (queue) {
+            if (queue.size() + delayed + msgs.size() > QUEUE_CAPACITY) return false;
+            delayed += msgs.size();
+        }
+        // do send delay
+        profileManager.simulateDelay(targetId, msgs.get(0), () -> {
+            synchronized (queue) {
+                delayed -= msgs.size();
+                for (Message msg : msgs) enqueue(msg);
+                queue.notifyAll();
+            }
+        });
+        return true;
+    }
+
+    /**
+     * Adds a message to the queue replacing any queued message it supersedes - must hold the queue lock.
+     * Its space was reserved when it was offered. A message arriving late behind a newer round's is dropped instead
+     */
+    private void enqueue(Message msg) {
+        if (isCoalescable(msg)) {
+            Iterator<Message> it = queue.iterator();
+            while (it.hasNext()) {
+                Message queued = it.next();
+                Integer order = compareRounds(queued, msg);
+                if (order == null) continue;
+                if (order > 0) return;
+                it.remove();
+            }
+        }
+        queue.addLast(msg);
+    }
+
+    /**
+     * @return the order of the rounds of two messages of the same type, group and epoch by their ballots - null if
+     * they are not of the same kind or either ballot is not a number, then neither supersedes the other
+     */
+    static Integer compareRounds(Message queued, Message msg) {
+        if (queued.getType() != msg.getType() || msg.getGroupId() == null || !msg.getGroupId().equals(queued.getGroupId()) ||
+                !Objects.equals(queued.getEpoch(), msg.getEpoch())) {
+            return null;
+        }
+        // a group decides once so its LEARNs carry no ballot
+        if (queued.getProposalNumber() == null && msg.getProposalNumber() == null) return 0;
+        try {
+            return Integer.compare(Integer.parseInt(queued.getProposalNumber()), Integer.parseInt(msg.getProposalNumber()));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /**
+     * @return true if the queue has no space left
+     */
+    boolean isFull() {
+        synchronized (queue) {
+            return queue.size() + delayed >= QUEUE_CAPACITY;
+        }
+    }
+
+    /**
+     * Stops the sender thread dropping anything still queued
+     */
+    void stop() {
+        running = false;
+        thread.interrupt();
+    }
+
+    /**
+     * Only round messages for a group are superseded by a message of the same type in a round with an equal or
+     * higher ballot, a later round makes the earlier one stale
+     */
+    private static boolean isCoalescable(Message msg) {
+        return switch (msg.getType()) {
+            case PREPARE, PROMISE, ACCEPT_REQUEST, ACCEPTED, LEARN -> true;
+            default -> false;
+        };
+    }
+
+    /**
+     * Takes batches off the queue and writes them to the peer
+     */
+    private void sendLoop() {
+        while (running) {
+            List<Message> batch = new ArrayList<>();
+            synchronized (queue) {
+                while (queue.isEmpty() && running) {
+                    try {
+                        queue.wait();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+                while (!queue.isEmpty() && batch.size() < MAX_BATCH) batch.add(queue.removeFirst());
+            }
+            if (!batch.isEmpty()) sendBatch(batch);
+        }
+    }
+
+    /**
+     * sends a batch of messages through the peer's shared memory ring or otherwise over a single connection
+     *
+     * @param batch the messages to send
+     */
+    private void sendBatch(List<Message> batch) {
+        ByteBuffer[] frames = new ByteBuffer[batch.size()];
+        for (int j = 0; j < frames.length; j++) frames[j] = batch.get(j).toFrame();
+
+        if (sharedMemory != null && sharedMemory.offer(targetId, frames)) {
+            onSent(batch, "shm");
+            return;
+        }
+
+        for (int i = 0; i < MAX_RETRIES && running; i++){
+            InetSocketAddress addr = address.get();
+            if (addr == null) return;
+
+            // gathering write of the shared frames - retries rewrite the same bytes without encoding again
+            for (int j = 0; j < frames.length; j++) frames[j] = batch.get(j).toFrame();
+
+            try (SocketChannel channel = SocketChannel.open(addr)) {
+                long remaining = 0;
+                for (ByteBuffer frame : frames) remaining += frame.remaining();
+                while (remaining > 0) remaining -= channel.write(frames);
+
+                onSent(batch, addr.getHostString() + ":" + addr.getPort());
+                return;
+            } catch (IOException e) {
+                if (i == MAX_RETRIES - 1) {
+                    // batch couldn't be sent - peer is unreachable
+                    onUnreachable.accept(targetId);
+                    break;
+                }
+                int timeout = ThreadLocalRandom.current().nextInt((int) (BASE_TIMEOUT * Math.pow(2, i)));
+                Logger.log("[sendBatch] Failed to send message to " + addr + " trying again after " + timeout + "ms");
+                try {Thread.sleep(timeout);} catch (InterruptedException ignored) {return;}
+            }
+        }
+    }
+
+    /**
+     * @return the time the last batch was written to the peer, 0 if none was
+     */
+    long getLastSent() {
+        return lastSent;
+    }
+
+    /**
+     * Logs a sent batch and simulates a crash if the profile calls for one
+     */
+    private void onSent(List<Message> batch, String via) {
+        lastSent = System.currentTimeMillis();
+        for (Message msg : batch) {
+            Logger.log("[sendBatch] Sent " + msg.getType() + " from " + memberId + " to " + via);
+
+            if (profileManager.shouldCrash()){
+                Logger.log("[sendBatch] Simulating crash");
+                System.exit(0);
+            }
+        }
+    }
+}
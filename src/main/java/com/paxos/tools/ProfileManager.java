@@ -18,6 +18,7 @@ public class ProfileManager {
     }
 
     // Cureent profile being enforced
+    private final String memberId;
     private final MemberProfile profile;
 
     // Delay Definitions
@@ -33,7 +34,11 @@ public class ProfileManager {
 
     private final int memberCount;
 
-    ProfileManager(MemberProfile profile, int memberCount) {
+    // Injected delays are scheduled on the wheel rather than slept so no thread is held up
+    private final TimerWheel faultWheel = new TimerWheel("fault-injection", 5, 512);
+
+    ProfileManager(String memberId, MemberProfile profile, int memberCount) {
+        this.memberId = memberId;
         this.memberCount = memberCount;
 
         if (profile == null) this.profile = MemberProfile.STANDARD;
@@ -41,18 +46,42 @@ public class ProfileManager {
     }
 
     /**
-     * Simulate network delay based profile.
+     * Picks a network delay based on the profile.
+     *
+     * @return the delay in milliseconds
      */
-    public void simulateDelay() {
-        int delay = switch (this.profile) {
+    public int nextDelay() {
+        return switch (this.profile) {
             case RELIABLE -> RELIABLE_DELAY_MS;
             case STANDARD -> ThreadLocalRandom.current().nextInt(STANDARD_DELAY_MS_MIN, STANDARD_DELAY_MS_MAX + 1);
             case LATENT -> ThreadLocalRandom.current().nextInt(LATENT_DELAY_MS_MIN, LATENT_DELAY_MS_MAX + 1);
             default -> ThreadLocalRandom.current().nextInt(STANDARD_DELAY_MS_MIN, LATENT_DELAY_MS_MAX + 1);
         };
-        try {
-            Thread.sleep(delay);
-        } catch (InterruptedException ignored) {}
+    }
+
+    /**
+     * Simulate network delay based on profile - the delivery is scheduled on the timer wheel after the delay,
+     * or run straight away if there is none. Deliveries run on the wheel thread so must only hand work off.
+     *
+     * @param peer the other member - traced with the delay
+     * @param msg the message being delivered (the first of a batch) - traced with the delay
+     * @param delivery the delivery to delay
+     */
+    public void simulateDelay(String peer, Message msg, Runnable delivery) {
+        int delay = nextDelay();
+        if (delay <= 0) {
+            delivery.run();
+            return;
+        }
+        TraceEvents.faultInjected(memberId, "DELAY", delay, peer, msg);
+        faultWheel.schedule(delay, delivery);
+    }
+
+    /**
+     * Stops the timer wheel - pending deliveries are dropped
+     */
+    public void stop() {
+        faultWheel.stop();
     }
 
     /**
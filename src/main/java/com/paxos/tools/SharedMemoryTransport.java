@@ -0,0 +1,322 @@
+package com.paxos.tools;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.net.InetSocketAddress;
+import java.net.NetworkInterface;
+import java.net.SocketException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Transport for members on the same host - one memory mapped single-producer single-consumer ring per directed
+ * member pair under a shared directory. Each ring is created by its reader, which stamps it while polling,
+ * so a sender only uses a ring that is being read and otherwise falls back to TCP. The stamps double as heartbeats:
+ * a member whose reader keeps stamping its ring is alive, so a local member is monitored through the same rings its
+ * messages travel over. An idle reader spins briefly then parks for exponentially longer up to {@code MAX_PARK_NANOS}.
+ */
+class SharedMemoryTransport {
+    private static final int RING_CAPACITY = 1 << 20; // 1MB of records per directed pair
+    private static final int WRITE_POS = 0; // header fields each on their own cache line
+    private static final int READ_POS = 64;
+    private static final int READER_STAMP = 128;
+    private static final int DATA = 192;
+    private static final long READER_TIMEOUT = 1000; // ms without a stamp before a ring is treated as unread
+    private static final int SPINS = 200; // polls before parking when idle
+    private static final long MIN_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+    private static final long MAX_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(2); // bounds the added latency when idle
+
+    private static final VarHandle LONGS = MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.nativeOrder());
+
+    private final String memberId;
+    private final Path dir;
+    private final Supplier<Set<String>> members;
+    private final Consumer<String> onLine;
+    private final Consumer<String> onAlive;
+
+    private final Map<String, Ring> inbound = new ConcurrentHashMap<>();
+    private final Map<String, Ring> outbound = new ConcurrentHashMap<>();
+    private final Map<String, Ring> watched = new ConcurrentHashMap<>(); // outbound rings whose stamps are heartbeats
+    private final Map<String, Long> lastStamps = new HashMap<>(); // reader thread only
+    private final Thread reader;
+    private volatile boolean running = true;
+
+    /**
+     * A mapped ring file - positions only ever grow, the index into the data area is the position mod capacity
+     */
+    private static class Ring {
+        final Path path;
+        final MappedByteBuffer buffer;
+
+        Ring(Path path) throws IOException {
+            this.path = path;
+            try (RandomAccessFile file = new RandomAccessFile(path.toFile(), "rw")) {
+                if (file.length() < DATA + RING_CAPACITY) file.setLength(DATA + RING_CAPACITY);
+                this.buffer = file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, DATA + RING_CAPACITY);
+            }
+        }
+
+        long get(int field) {
+            return (long) LONGS.getAcquire(buffer, field);
+        }
+
+        void set(int field, long value) {
+            LONGS.setRelease(buffer, field, value);
+        }
+
+        /**
+         * Copies bytes into the data area wrapping at the end
+         */
+        void write(long pos, byte[] src, int off, int len) {
+            int index = (int) (pos % RING_CAPACITY);
+            int first = Math.min(len, RING_CAPACITY - index);
+            buffer.put(DATA + index, src, off, first);
+            if (first < len) buffer.put(DATA, src, off + first, len - first);
+        }
+
+        /**
+         * Copies bytes out of the data area wrapping at the end
+         */
+        void read(long pos, byte[] dst, int len) {
+            int index = (int) (pos % RING_CAPACITY);
+            int first = Math.min(len, RING_CAPACITY - index);
+            buffer.get(DATA + index, dst, 0, first);
+            if (first < len) buffer.get(DATA, dst, first, len - first);
+        }
+    }
+
+    /**
+     * @param memberId this member
+     * @param dir the shared directory holding the ring files
+     * @param members supplies the current member ids - rings are created for new members as they appear
+     * @param onLine receives every message line read from a ring
+     * @param onAlive receives the id of every member whose reader stamped its ring since the last check
+     */
+    SharedMemoryTransport(String memberId, Path dir, Supplier<Set<String>> members, Consumer<String> onLine,
+                          Consumer<String> onAlive) throws IOException {
+        this.memberId = memberId;
+        this.dir = dir;
+        this.members = members;
+        this.onLine = onLine;
+        this.onAlive = onAlive;
+        Files.createDirectories(dir);
+
+        this.reader = new Thread(this::readLoop, "shm-reader");
+        this.reader.setDaemon(true);
+        this.reader.start();
+    }
+
+    /**
+     * @param address a member's address
+     * @return true if the member runs on this host
+     */
+    static boolean isLocal(InetSocketAddress address) {
+        if (address == null || address.getAddress() == null) return false;
+        if (address.getAddress().isLoopbackAddress()) return true;
+        try {
+            return NetworkInterface.getByInetAddress(address.getAddress()) != null;
+        } catch (SocketException e) {
+            return false;
+        }
+    }
+
+    /**
+     * @param targetId a member
+     * @return true if the member's reader is stamping its ring - its heartbeats then come through the ring
+     */
+    boolean isReading(String targetId) {
+        Ring ring = watched.get(targetId);
+        return ring != null && System.currentTimeMillis() - ring.get(READER_STAMP) <= READER_TIMEOUT;
+    }
+
+    /**
+     * Writes frames to a member's ring as one record - must only be called from the member's sender thread
+     *
+     * @param targetId the member to send to
+     * @param frames the encoded messages
+     * @return false if the member has no ring being read or it is full - the caller falls back to TCP
+     */
+    boolean offer(String targetId, ByteBuffer[] frames) {
+        Ring ring = outbound.computeIfAbsent(targetId, this::openOutbound);
+        if (ring == null) {
+            // not created by the reader yet - try again next time
+            outbound.remove(targetId);
+            return false;
+        }
+        if (System.currentTimeMillis() - ring.get(READER_STAMP) > READER_TIMEOUT) {
+            // reader gone - its ring is reopened next time in case it was recreated by a restarted reader
+            outbound.remove(targetId);
+            return false;
+        }
+
+        int length = 0;
+        for (ByteBuffer frame : frames) length += frame.remaining();
+        long write = ring.get(WRITE_POS);
+        if (RING_CAPACITY - (write - ring.get(READ_POS)) < Integer.BYTES + length) return false;
+
+        byte[] record = new byte[Integer.BYTES + length];
+        ByteBuffer.wrap(record).putInt(length);
+        int off = Integer.BYTES;
+        for (ByteBuffer frame : frames) {
+            int n = frame.remaining();
+            frame.duplicate().get(record, off, n);
+            off += n;
+        }
+        ring.write(write, record, 0, record.length);
+        // publish the record only once it is fully written
+        ring.set(WRITE_POS, write + record.length);
+        return true;
+    }
+
+    private Ring openOutbound(String targetId) {
+        Path path = dir.resolve(ringName(memberId, targetId));
+        if (!Files.exists(path)) return null;
+        try {
+            return new Ring(path);
+        } catch (IOException e) {
+            Logger.log("[SharedMemoryTransport] Failed to open ring " + path + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Creates the inbound ring of every member - anything left in a ring by an earlier run is skipped
+     */
+    private void openInbound(Set<String> ids) {
+        for (String id : ids) {
+            if (id.equals(memberId) || inbound.containsKey(id)) continue;
+            Path path = dir.resolve(ringName(id, memberId));
+            try {
+                Ring ring = new Ring(path);
+                ring.set(READ_POS, ring.get(WRITE_POS));
+                ring.set(READER_STAMP, System.currentTimeMillis());
+                inbound.put(id, ring);
+            } catch (IOException e) {
+                Logger.log("[SharedMemoryTransport] Failed to create ring " + path + ": " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Reports every member whose reader stamped the ring to it since the last check
+     */
+    private void watchReaders(Set<String> ids, long now) {
+        for (String id : ids) {
+            if (id.equals(memberId)) continue;
+            Ring ring = watched.get(id);
+            if (ring == null) {
+                ring = openOutbound(id);
+                if (ring == null) continue;
+                watched.put(id, ring);
+            }
+            long stamp = ring.get(READER_STAMP);
+            if (now - stamp > READER_TIMEOUT) {
+                // reader gone - reopened next time in case a restarted reader recreated the ring
+                watched.remove(id);
+                continue;
+            }
+            Long last = lastStamps.put(id, stamp);
+            if (last == null || last != stamp) onAlive.accept(id);
+        }
+    }
+
+    /**
+     * Polls every inbound ring, spinning briefly then parking for longer each time there is nothing to read
+     */
+    private void readLoop() {
+        long lastStamp = 0;
+        int idle = 0;
+        long park = MIN_PARK_NANOS;
+        while (running) {
+            long now = System.currentTimeMillis();
+            if (now - lastStamp >= READER_TIMEOUT / 4) {
+                Set<String> ids = members.get();
+                openInbound(ids);
+                for (Ring ring : inbound.values()) ring.set(READER_STAMP, now);
+                watchReaders(ids, now);
+                lastStamp = now;
+            }
+
+            boolean read = false;
+            for (Ring ring : inbound.values()) read |= drain(ring);
+
+            if (read) {
+                idle = 0;
+                park = MIN_PARK_NANOS;
+            } else if (++idle < SPINS) {
+                Thread.onSpinWait();
+            } else {
+                LockSupport.parkNanos(park);
+                park = Math.min(park * 2, MAX_PARK_NANOS);
+            }
+        }
+    }
+
+    /**
+     * Reads every published record of a ring
+     *
+     * @return true if anything was read
+     */
+    private boolean drain(Ring ring) {
+        long read = ring.get(READ_POS);
+        long write = ring.get(WRITE_POS);
+        if (read == write) return false;
+
+        byte[] header = new byte[Integer.BYTES];
+        while (read < write) {
+            ring.read(read, header, Integer.BYTES);
+            int length = ByteBuffer.wrap(header).getInt();
+            if (length < 0 || length > RING_CAPACITY - Integer.BYTES) {
+                Logger.log("[SharedMemoryTransport] Corrupt record in " + ring.path + " - skipping to end");
+                read = write;
+                break;
+            }
+            byte[] record = new byte[length];
+            ring.read(read + Integer.BYTES, record, length);
+            read += Integer.BYTES + length;
+
+            for (String line : new String(record, StandardCharsets.UTF_8).split("\n")) {
+                if (line.isEmpty()) continue;
+                try {
+                    onLine.accept(line);
+                } catch (RuntimeException e) {
+                    Logger.log("[SharedMemoryTransport] Failed to handle message: " + e);
+                }
+            }
+        }
+        ring.set(READ_POS, read);
+        return true;
+    }
+
+    /**
+     * Stops the reader and removes this member's inbound rings so senders fall back to TCP
+     */
+    void stop() {
+        running = false;
+        LockSupport.unpark(reader);
+        for (Ring ring : inbound.values()) {
+            try {
+                Files.deleteIfExists(ring.path);
+            } catch (IOException ignored) {}
+        }
+    }
+
+    private static String ringName(String from, String to) {
+        return from + "-to-" + to + ".ring";
+    }
+}
@@ -18,6 +18,7 @@ public class SimpleJsonUtil {
 
         int braceCount = 0;
         boolean inQuotes = false;
+        boolean escaped = false;
         StringBuilder key = new StringBuilder();
         StringBuilder value = new StringBuilder();
         String currentKey = null;
@@ -25,7 +26,11 @@ public class SimpleJsonUtil {
         for (int i = 0; i < json.length(); i++) {
             char c = json.charAt(i);
 
-            if (c == '"' && (i == 0 || json.charAt(i - 1) != '\\')) {
+            if (inQuotes && escaped) {
+                escaped = false;
+            } else if (inQuotes && c == '\\') {
+                escaped = true;
+            } else if (c == '"') {
                 inQuotes = !inQuotes;
             }
 
@@ -33,13 +38,12 @@ public class SimpleJsonUtil {
                 if (c == '{') braceCount++;
                 if (c == '}') braceCount--;
                 if (c == ':' && currentKey == null) {
-                    currentKey = key.toString().trim().replaceAll("^\"|\"$", "");
+                    currentKey = unquote(key.toString());
                     key.setLength(0);
                     continue;
                 }
                 if (c == ',' && braceCount == 0) {
-                    String val = value.toString().trim().replaceAll("^\"|\"$", "");
-                    map.put(currentKey, val);
+                    map.put(currentKey, unquote(value.toString()));
                     currentKey = null;
                     value.setLength(0);
                     continue;
@@ -54,8 +58,7 @@ public class SimpleJsonUtil {
         }
 
         if (currentKey != null) {
-            String val = value.toString().trim().replaceAll("^\"|\"$", "");
-            map.put(currentKey, val);
+            map.put(currentKey, unquote(value.toString()));
         }
 
         return map;
@@ -70,17 +73,83 @@ public class SimpleJsonUtil {
         Iterator<Map.Entry<String, String>> it = map.entrySet().iterator();
         while (it.hasNext()) {
             Map.Entry<String, String> e = it.next();
-            sb.append("\"").append(e.getKey()).append("\":");
-            String val = e.getValue();
-            // if the value looks like JSON, leave it as-is; otherwise quote it
-            if (val.startsWith("{") && val.endsWith("}")) {
-                sb.append(val);
-            } else {
-                sb.append("\"").append(val).append("\"");
-            }
+            sb.append("\"").append(escape(e.getKey())).append("\":");
+            sb.append("\"").append(escape(e.getValue())).append("\"");
             if (it.hasNext()) sb.append(",");
         }
         sb.append("}");
         return sb.toString();
     }
+
+    /**
+     * Escapes quotes, backslashes and control characters so any value fits on one line
+     */
+    private static String escape(String val) {
+        StringBuilder sb = new StringBuilder(val.length());
+        for (int i = 0; i < val.length(); i++) {
+            char c = val.charAt(i);
+            switch (c) {
+                case '"' -> sb.append("\\\"");
+                case '\\' -> sb.append("\\\\");
+                case '\n' -> sb.append("\\n");
+                case '\r' -> sb.append("\\r");
+                case '\t' -> sb.append("\\t");
+                default -> {
+                    if (c < 0x20) sb.append(String.format("\\u%04x", (int) c));
+                    else sb.append(c);
+                }
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Removes surrounding quotes of a quoted value and reverses the escaping, other values are returned trimmed
+     */
+    private static String unquote(String raw) {
+        String val = raw.trim();
+        if (val.length() < 2 || !val.startsWith("\"") || !val.endsWith("\"")) return val;
+        val = val.substring(1, val.length() - 1);
+        if (val.indexOf('\\') < 0) return val;
+
+        StringBuilder sb = new StringBuilder(val.length());
+        for (int i = 0; i < val.length(); i++) {
+            char c = val.charAt(i);
+            if (c != '\\' || i + 1 == val.length()) {
+                sb.append(c);
+                continue;
+            }
+            char next = val.charAt(++i);
+            switch (next) {
+                case 'n' -> sb.append('\n');
+                case 'r' -> sb.append('\r');
+                case 't' -> sb.append('\t');
+                case 'u' -> {
+                    int code = i + 4 < val.length() ? parseHex(val, i + 1) : -1;
+                    if (code < 0) {
+                        // not a valid escape - kept like any other unknown escape
+                        sb.append(next);
+                    } else {
+                        sb.append((char) code);
+                        i += 4;
+                    }
+                }
+                default -> sb.append(next);
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * @return the value of the four hex digits at {@code from} or -1 if any is not a hex digit
+     */
+    private static int parseHex(String val, int from) {
+        int code = 0;
+        for (int i = from; i < from + 4; i++) {
+            int digit = Character.digit(val.charAt(i), 16);
+            if (digit < 0) return -1;
+            code = (code << 4) | digit;
+        }
+        return code;
+    }
 }
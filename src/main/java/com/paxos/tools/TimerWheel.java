@@ -0,0 +1,118 @@
+package com.paxos.tools;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Hashed timer wheel - schedules many short timers on a single thread.
+ * Timers are hashed into buckets by expiry tick, each tick the worker runs the timers due in the current bucket.
+ * Tasks run on the wheel thread so they must only hand work off (e.g. post to a queue).
+ */
+public class TimerWheel {
+    private final long tickNanos;
+    private final List<List<Timeout>> buckets;
+    private final Queue<Timeout> pending = new ConcurrentLinkedQueue<>();
+    private final Thread worker;
+    private final long startTime = System.nanoTime();
+    private volatile boolean running = true;
+    private long tick = 0;
+
+    /**
+     * A scheduled task and how many full rotations remain before it is due
+     */
+    private static class Timeout {
+        final long deadline;
+        final Runnable task;
+        long remainingRounds;
+
+        Timeout(long deadline, Runnable task) {
+            this.deadline = deadline;
+            this.task = task;
+        }
+    }
+
+    public TimerWheel(String name, long tickMillis, int wheelSize) {
+        this.tickNanos = TimeUnit.MILLISECONDS.toNanos(tickMillis);
+        this.buckets = new ArrayList<>(wheelSize);
+        for (int i = 0; i < wheelSize; i++) buckets.add(new ArrayList<>());
+
+        this.worker = new Thread(this::run, name);
+        this.worker.setDaemon(true);
+        this.worker.start();
+    }
+
+    /**
+     * Schedules a task to run after a delay
+     *
+     * @param delayMillis the delay in milliseconds
+     * @param task the task to run
+     */
+    public void schedule(long delayMillis, Runnable task) {
+        long deadline = System.nanoTime() - startTime + TimeUnit.MILLISECONDS.toNanos(Math.max(0, delayMillis));
+        pending.offer(new Timeout(deadline, task));
+    }
+
+    /**
+     * Stops the wheel - timers not yet run are dropped
+     */
+    public void stop() {
+        running = false;
+        worker.interrupt();
+    }
+
+    private void run() {
+        while (running) {
+            long tickDeadline = (tick + 1) * tickNanos;
+            long sleepNanos = tickDeadline - (System.nanoTime() - startTime);
+            if (sleepNanos > 0) {
+                try {
+                    TimeUnit.NANOSECONDS.sleep(sleepNanos);
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+
+            transferPending();
+            expire(buckets.get((int) (tick % buckets.size())), tickDeadline);
+            tick++;
+        }
+    }
+
+    /**
+     * Moves newly scheduled timers into their bucket
+     */
+    private void transferPending() {
+        Timeout timeout;
+        while ((timeout = pending.poll()) != null) {
+            long expiryTick = Math.max(tick, timeout.deadline / tickNanos);
+            timeout.remainingRounds = (expiryTick - tick) / buckets.size();
+            buckets.get((int) (expiryTick % buckets.size())).add(timeout);
+        }
+    }
+
+    /**
+     * Runs every timer in the bucket that is due in this rotation
+     */
+    private void expire(List<Timeout> bucket, long tickDeadline) {
+        Iterator<Timeout> it = bucket.iterator();
+        while (it.hasNext()) {
+            Timeout timeout = it.next();
+            if (timeout.remainingRounds > 0) {
+                timeout.remainingRounds--;
+                continue;
+            }
+            if (timeout.deadline > tickDeadline) continue;
+
+            it.remove();
+            try {
+                timeout.task.run();
+            } catch (RuntimeException e) {
+                Logger.log("[TimerWheel] Timer task failed: " + e);
+            }
+        }
+    }
+}
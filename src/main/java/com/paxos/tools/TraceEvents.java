@@ -0,0 +1,206 @@
+package com.paxos.tools;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Java Flight Recorder events for tracing individual rounds across members. Every event carries the member that
+ * recorded it, the ballot and the peer on the other side, so recordings from several members can be joined into the
+ * critical path of a round. Each event type is registered once when the class is loaded (call {@link #register}
+ * early so the first message does not pay for it), and events are only allocated once the cached type is found
+ * enabled - a call with its event disabled reads one flag and allocates nothing.
+ * Record with e.g. {@code -XX:StartFlightRecording=filename=member.jfr}.
+ */
+public final class TraceEvents {
+    private static final String CATEGORY = "Paxos";
+
+    private TraceEvents() {}
+
+    /**
+     * Registers the event types if they are not yet - JFR builds each type from its annotations, which is slow
+     */
+    public static void register() {
+        // loading the class registers the types below
+    }
+
+    @Name("com.paxos.MessageSent")
+    @Label("Message Sent")
+    @Category(CATEGORY)
+    @StackTrace(false)
+    public static class MessageSent extends Event {
+        @Label("Member") String member;
+        @Label("Peer") String peer;
+        @Label("Type") String messageType;
+        @Label("Group") String group;
+        @Label("Ballot") String ballot;
+    }
+
+    @Name("com.paxos.MessageReceived")
+    @Label("Message Received")
+    @Category(CATEGORY)
+    @StackTrace(false)
+    public static class MessageReceived extends Event {
+        @Label("Member") String member;
+        @Label("Peer") String peer;
+        @Label("Type") String messageType;
+        @Label("Group") String group;
+        @Label("Ballot") String ballot;
+    }
+
+    @Name("com.paxos.RoleTransition")
+    @Label("Role Transition")
+    @Description("A Proposer, Acceptor or Learner moving on in a round - the peer is the member whose message caused it")
+    @Category(CATEGORY)
+    @StackTrace(false)
+    public static class RoleTransition extends Event {
+        @Label("Member") String member;
+        @Label("Role") String role;
+        @Label("Transition") String transition;
+        @Label("Group") String group;
+        @Label("Ballot") String ballot;
+        @Label("Peer") String peer;
+    }
+
+    @Name("com.paxos.RetryFired")
+    @Label("Retry Fired")
+    @Description("A group's retry timer fired before it decided - the peer is the member whose turn it is to retry")
+    @Category(CATEGORY)
+    @StackTrace(false)
+    public static class RetryFired extends Event {
+        @Label("Member") String member;
+        @Label("Group") String group;
+        @Label("Timeouts Seen") int timeoutsSeen;
+        @Label("Ballot") String ballot;
+        @Label("Peer") String peer;
+    }
+
+    @Name("com.paxos.FaultInjected")
+    @Label("Fault Injected")
+    @Description("A delay or drop injected by the member's profile")
+    @Category(CATEGORY)
+    @StackTrace(false)
+    public static class FaultInjected extends Event {
+        @Label("Member") String member;
+        @Label("Fault") String fault;
+        @Label("Delay (ms)") int delayMs;
+        @Label("Peer") String peer;
+        @Label("Type") String messageType;
+        @Label("Ballot") String ballot;
+    }
+
+    private static final EventType MESSAGE_SENT = EventType.getEventType(MessageSent.class);
+    private static final EventType MESSAGE_RECEIVED = EventType.getEventType(MessageReceived.class);
+    private static final EventType ROLE_TRANSITION = EventType.getEventType(RoleTransition.class);
+    private static final EventType RETRY_FIRED = EventType.getEventType(RetryFired.class);
+    private static final EventType FAULT_INJECTED = EventType.getEventType(FaultInjected.class);
+
+    /**
+     * @param member the sending member
+     * @param peer the member the message is queued for
+     * @param msg the message
+     */
+    public static void messageSent(String member, String peer, Message msg) {
+        if (!MESSAGE_SENT.isEnabled()) return;
+        MessageSent event = new MessageSent();
+        event.member = member;
+        event.peer = peer;
+        event.messageType = msg.getType().name();
+        event.group = msg.getGroupId();
+        event.ballot = msg.getProposalNumber();
+        event.commit();
+    }
+
+    /**
+     * @param member the receiving member
+     * @param msg the message - its sender is the peer
+     */
+    public static void messageReceived(String member, Message msg) {
+        if (!MESSAGE_RECEIVED.isEnabled()) return;
+        MessageReceived event = new MessageReceived();
+        event.member = member;
+        event.peer = msg.getSender();
+        event.messageType = msg.getType().name();
+        event.group = msg.getGroupId();
+        event.ballot = msg.getProposalNumber();
+        event.commit();
+    }
+
+    /**
+     * @param member the member whose role moved on
+     * @param role the role e.g. Acceptor
+     * @param transition what happened e.g. PROMISED
+     * @param group the consensus group
+     * @param ballot the ballot of the round
+     * @param peer the member whose message caused the transition - null if none did
+     */
+    public static void roleTransition(String member, String role, String transition, String group, String ballot, String peer) {
+        if (!ROLE_TRANSITION.isEnabled()) return;
+        RoleTransition event = new RoleTransition();
+        event.member = member;
+        event.role = role;
+        event.transition = transition;
+        event.group = group;
+        event.ballot = ballot;
+        event.peer = peer;
+        event.commit();
+    }
+
+    /**
+     * @param member the member whose timer fired
+     * @param group the undecided group
+     * @param timeoutsSeen the number of timeouts the group has seen including this one
+     * @param ballot the member's latest ballot in the group
+     * @param peer the member whose turn it is to retry
+     */
+    public static void retryFired(String member, String group, int timeoutsSeen, String ballot, String peer) {
+        if (!RETRY_FIRED.isEnabled()) return;
+        RetryFired event = new RetryFired();
+        event.member = member;
+        event.group = group;
+        event.timeoutsSeen = timeoutsSeen;
+        event.ballot = ballot;
+        event.peer = peer;
+        event.commit();
+    }
+
+    /**
+     * @param member the member injecting the fault
+     * @param fault DELAY or DROP
+     * @param delayMs the injected delay - 0 for a drop
+     * @param peer the other member
+     * @param msg the affected message - the first of a delayed batch
+     */
+    public static void faultInjected(String member, String fault, int delayMs, String peer, Message msg) {
+        if (!FAULT_INJECTED.isEnabled()) return;
+        FaultInjected event = new FaultInjected();
+        event.member = member;
+        event.fault = fault;
+        event.delayMs = delayMs;
+        event.peer = peer;
+        event.messageType = msg != null ? msg.getType().name() : null;
+        event.ballot = msg != null ? msg.getProposalNumber() : null;
+        event.commit();
+    }
+
+    /**
+     * Records a dropped incoming line - only parsed when the event is enabled
+     *
+     * @param member the member dropping the message
+     * @param line the raw message line
+     */
+    public static void messageDropped(String member, String line) {
+        if (!FAULT_INJECTED.isEnabled()) return;
+        Message msg;
+        try {
+            msg = Message.fromJson(line);
+        } catch (RuntimeException e) {
+            msg = null;
+        }
+        faultInjected(member, "DROP", 0, msg != null ? msg.getSender() : null, msg);
+    }
+}
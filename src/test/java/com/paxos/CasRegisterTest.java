@@ -0,0 +1,71 @@
+package com.paxos;
+
+import com.paxos.tools.ProfileManager;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CasRegisterTest {
+    private static final int BASE_PORT = 19310;
+
+    private final List<Paxos> members = new ArrayList<>();
+
+    @AfterEach
+    void closeMembers() {
+        members.forEach(Paxos::close);
+    }
+
+    private Paxos start(String id) {
+        PaxosConfig config = new PaxosConfig(id).profile(ProfileManager.MemberProfile.RELIABLE);
+        for (int i = 1; i <= 3; i++) config.member("M" + i, "localhost", BASE_PORT + i);
+        Paxos member = new Paxos(config);
+        members.add(member);
+        return member;
+    }
+
+    /**
+     * Two members race to set the same unset registers - exactly one of them swaps each register, and it is the
+     * value of the one that reported the swap that is held
+     */
+    @Test
+    void competingCompareAndSetSwapsOnce() throws Exception {
+        Paxos m1 = start("M1");
+        Paxos m2 = start("M2");
+        Paxos m3 = start("M3");
+
+        for (int i = 0; i < 10; i++) {
+            String key = "k" + i;
+            CompletableFuture<Boolean> first = m1.compareAndSet(key, null, "a");
+            CompletableFuture<Boolean> second = m2.compareAndSet(key, null, "b");
+            boolean firstSwapped = first.get(30, TimeUnit.SECONDS);
+            boolean secondSwapped = second.get(30, TimeUnit.SECONDS);
+            assertNotEquals(firstSwapped, secondSwapped, "exactly one swap of " + key);
+
+            String held = m3.change(key, current -> current).get(30, TimeUnit.SECONDS);
+            assertEquals(firstSwapped ? "a" : "b", held);
+        }
+    }
+
+    @Test
+    void compareAndSetOnlySwapsTheExpectedValue() throws Exception {
+        Paxos m1 = start("M1");
+        start("M2");
+        start("M3");
+
+        assertTrue(m1.compareAndSet("k", null, "a").get(30, TimeUnit.SECONDS));
+        assertFalse(m1.compareAndSet("k", null, "b").get(30, TimeUnit.SECONDS));
+        // the register already holds the update yet the expected value does not match
+        assertFalse(m1.compareAndSet("k", "x", "a").get(30, TimeUnit.SECONDS));
+        assertTrue(m1.compareAndSet("k", "a", "c").get(30, TimeUnit.SECONDS));
+        assertEquals("c", m1.change("k", current -> current).get(30, TimeUnit.SECONDS));
+    }
+}
@@ -0,0 +1,62 @@
+package com.paxos;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ReconfigurationTest {
+    private static final int BASE_PORT = 19300;
+
+    private final List<Paxos> members = new ArrayList<>();
+
+    @AfterEach
+    void closeMembers() {
+        members.forEach(Paxos::close);
+    }
+
+    private Paxos start(String id, boolean joining, int memberCount) {
+        PaxosConfig config = new PaxosConfig(id).joining(joining).proposeTimeout(30_000);
+        for (int i = 1; i <= memberCount; i++) config.member("M" + i, "localhost", BASE_PORT + i);
+        Paxos member = new Paxos(config);
+        members.add(member);
+        return member;
+    }
+
+    /**
+     * {M2,M3} decide while M1 is down, then M2 is removed and M4 promoted with M1 as its donor. The quorum {M1,M4}
+     * of the final configuration overlaps none of the ballots the value was chosen in, so it must have been carried over
+     */
+    @Test
+    void valueChosenBeforeRemoveThenPromoteSurvives() throws Exception {
+        Paxos m2 = start("M2", false, 3);
+        Paxos m3 = start("M3", false, 3);
+        assertEquals("v", m2.propose("v").get(30, TimeUnit.SECONDS));
+
+        // M1 missed the decision once the senders gave up on it, so M4 caught up by it does not learn it either
+        Thread.sleep(2000);
+        Paxos m1 = start("M1", false, 3);
+        CountDownLatch promoted = new CountDownLatch(1);
+        CountDownLatch settled = new CountDownLatch(1);
+        m1.subscribe((groupId, value) -> {
+            if (!groupId.startsWith(Paxos.CONFIG_GROUP_PREFIX)) return;
+            if (value.equals("PROMOTE M4")) promoted.countDown();
+            else if (promoted.getCount() == 0) settled.countDown();
+        });
+        start("M4", true, 4);
+        m1.proposeMembershipChange("REMOVE M2");
+        m1.proposeMembershipChange("ADD M4 localhost " + (BASE_PORT + 4));
+        // PROMOTE is requested by M4 once caught up, the joint configuration it starts ends with the next epoch
+        assertTrue(settled.await(60, TimeUnit.SECONDS), "M4 was not promoted");
+
+        m2.close();
+        m3.close();
+        assertEquals("v", m1.propose("w").get(60, TimeUnit.SECONDS));
+    }
+}
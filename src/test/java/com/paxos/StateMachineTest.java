@@ -0,0 +1,85 @@
+package com.paxos;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class StateMachineTest {
+    private final ForkJoinPool pool = new ForkJoinPool(4);
+
+    @AfterEach
+    void shutdown() {
+        pool.shutdown();
+    }
+
+    @Test
+    void parallelApplyMatchesSerialApply() {
+        Random random = new Random(42);
+        List<String> log = new ArrayList<>();
+        for (int i = 0; i < 20000; i++) {
+            String key = "k" + random.nextInt(500);
+            int op = random.nextInt(10);
+            if (op == 0) log.add("DEL " + key);
+            else if (op == 1) log.add("not a command " + i);
+            else log.add("SET " + key + " v" + i);
+        }
+
+        // applied serially in log order
+        Map<String, String> expected = new HashMap<>();
+        for (String value : log) {
+            String[] parts = value.split(" ", 3);
+            if (parts[0].equals("SET")) expected.put(parts[1], parts[2]);
+            else if (parts[0].equals("DEL")) expected.remove(parts[1]);
+        }
+
+        // applied in batches of every size from one value up, each forked over its independent keys
+        StateMachine machine = new StateMachine(pool);
+        int from = 0;
+        for (int size = 1; from < log.size(); size = size * 2 % 4093) {
+            int to = Math.min(log.size(), from + size);
+            machine.apply(log.subList(from, to));
+            from = to;
+        }
+        assertEquals(expected, machine.snapshot().join());
+    }
+
+    @Test
+    void readSeesEveryBatchQueuedBeforeIt() {
+        StateMachine machine = new StateMachine(pool);
+        for (int i = 0; i < 100; i++) {
+            List<String> batch = new ArrayList<>();
+            for (int k = 0; k < 50; k++) batch.add("SET k" + k + " " + i);
+            machine.apply(batch);
+            assertEquals(String.valueOf(i), machine.get("k" + (i % 50)).join());
+        }
+        machine.apply(List.of("DEL k7"));
+        assertNull(machine.get("k7").join());
+    }
+
+    @Test
+    void restoreIsOrderedBetweenBatches() {
+        StateMachine machine = new StateMachine(pool);
+        machine.apply(List.of("SET a 1", "SET b 1"));
+        machine.restore(Map.of("b", "2"));
+        machine.apply(List.of("SET c 3"));
+
+        assertEquals(Map.of("b", "2", "c", "3"), machine.snapshot().join());
+    }
+
+    @Test
+    void valuesThatAreNotCommandsLeaveStateAlone() {
+        StateMachine machine = new StateMachine(pool);
+        machine.apply(List.of("SET a 1", "M1", Paxos.NO_OP, "SET", "DEL a b", "#config ADD M4 localhost 9004"));
+
+        assertEquals(Map.of("a", "1"), machine.snapshot().join());
+    }
+}
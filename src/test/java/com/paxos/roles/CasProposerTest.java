@@ -0,0 +1,90 @@
+package com.paxos.roles;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CasProposerTest {
+
+    @Test
+    void noInterruptedWriteComputesAfresh() {
+        assertNull(CasProposer.recover("k", new HashMap<>(), new long[]{9, 8, 7, 6}, "v"));
+    }
+
+    @Test
+    void interruptedWriteInTheLatestBallotIsCompleted() {
+        Map<Long, CasProposer.Update> written = new HashMap<>();
+        written.put(20L, new CasProposer.Update("mine", "true"));
+
+        // the write of ballot 20 is the latest value - written again with the result of the attempt that wrote it
+        CasProposer.Update next = CasProposer.recover("k", written, new long[]{20, 10, 5, 0}, "mine");
+        assertEquals("mine", next.value);
+        assertEquals("true", next.result);
+    }
+
+    @Test
+    void interruptedWriteBuiltOnByLaterChangesIsCompleted() {
+        Map<Long, CasProposer.Update> written = new HashMap<>();
+        written.put(20L, new CasProposer.Update("mine", "mine"));
+
+        // other proposers changed the register twice on top of the write
+        CasProposer.Update next = CasProposer.recover("k", written, new long[]{40, 30, 20, 10}, "theirs");
+        assertEquals("theirs", next.value);
+        assertEquals("mine", next.result);
+    }
+
+    @Test
+    void historyOlderThanEveryAttemptMeansNoneWasApplied() {
+        Map<Long, CasProposer.Update> written = new HashMap<>();
+        written.put(20L, new CasProposer.Update("first", "first"));
+        written.put(30L, new CasProposer.Update("second", "second"));
+
+        // the latest value was computed from ballot 15, older than both attempts
+        assertNull(CasProposer.recover("k", written, new long[]{25, 15, 10, 0}, "theirs"));
+    }
+
+    @Test
+    void laterOfTwoInterruptedWritesIsTheOneCompleted() {
+        Map<Long, CasProposer.Update> written = new HashMap<>();
+        written.put(20L, new CasProposer.Update("first", "false"));
+        written.put(30L, new CasProposer.Update("second", "true"));
+
+        CasProposer.Update next = CasProposer.recover("k", written, new long[]{30, 15, 0, 0}, "second");
+        assertEquals("true", next.result);
+    }
+
+    @Test
+    void historyTooShortToTellFails() {
+        Map<Long, CasProposer.Update> written = new HashMap<>();
+        written.put(20L, new CasProposer.Update("mine", "mine"));
+
+        // every remembered ballot is newer than the attempt and none is it
+        assertThrows(IllegalStateException.class,
+                () -> CasProposer.recover("k", written, new long[]{60, 50, 40, 30}, "theirs"));
+    }
+
+    @Test
+    void ballotsIncreaseAndKeepTheMemberBits() {
+        CasProposer proposer = new CasProposer("M3", null, null, null);
+        long bits = CasProposer.memberBits("M3");
+        long previous = 0;
+        for (int i = 0; i < 100; i++) {
+            long ballot = proposer.nextBallot();
+            assertTrue(ballot > previous);
+            assertEquals(bits, ballot & ((1 << 10) - 1));
+            previous = ballot;
+        }
+    }
+
+    @Test
+    void memberBitsDependOnlyOnTheId() {
+        assertEquals(CasProposer.memberBits("M1"), new CasProposer("M1", null, null, null).nextBallot() & ((1 << 10) - 1));
+        assertTrue(CasProposer.memberBits("M1") != CasProposer.memberBits("M2"));
+    }
+}
@@ -0,0 +1,79 @@
+package com.paxos.roles;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RegisterTableTest {
+
+    @Test
+    void newRegisterIsEmptyAndKeepsItsIndex() {
+        RegisterTable table = new RegisterTable();
+        int index = table.indexOf("k");
+
+        assertEquals(index, table.indexOf("k"));
+        assertEquals("k", table.getKey(index));
+        assertEquals(0, table.getPromised(index));
+        assertNull(table.getPromisedTo(index));
+        assertEquals(0, table.getAccepted(index));
+        assertNull(table.getValue(index));
+        for (int depth = 0; depth < RegisterTable.HISTORY; depth++) assertEquals(0, table.getHistory(index, depth));
+    }
+
+    @Test
+    void collidingKeysProbeToTheirOwnRegisters() {
+        // "Aa" and "BB" share a hash code so the second is placed by linear probing
+        assertEquals("Aa".hashCode(), "BB".hashCode());
+        RegisterTable table = new RegisterTable();
+        int aa = table.indexOf("Aa");
+        int bb = table.indexOf("BB");
+        assertNotEquals(aa, bb);
+
+        table.setPromised(aa, 5, "M1");
+        table.setAccepted(aa, 5, new long[]{4, 3, 2, 1}, "a");
+        table.setPromised(bb, 7, "M2");
+        table.setAccepted(bb, 7, new long[]{6, 0, 0, 0}, "b");
+
+        assertEquals(aa, table.indexOf("Aa"));
+        assertEquals(bb, table.indexOf("BB"));
+        assertEquals("a", table.getValue(aa));
+        assertEquals("b", table.getValue(bb));
+        assertEquals("M2", table.getPromisedTo(bb));
+    }
+
+    @Test
+    void growKeepsEveryRegister() {
+        RegisterTable table = new RegisterTable();
+        int initial = table.capacity();
+        int count = initial * 20;
+        for (int i = 0; i < count; i++) {
+            int index = table.indexOf("key-" + i);
+            table.setPromised(index, i + 1, "M" + (i % 5));
+            table.setAccepted(index, i + 1, new long[]{i, i - 1, i - 2, i - 3}, "value-" + i);
+        }
+
+        assertTrue(table.capacity() >= 2 * count, "load factor stays at most 1/2");
+        assertEquals(0, table.capacity() & (table.capacity() - 1), "capacity stays a power of two");
+        int registers = 0;
+        for (int index = 0; index < table.capacity(); index++) {
+            if (table.getKey(index) != null) registers++;
+        }
+        assertEquals(count, registers);
+
+        for (int i = 0; i < count; i++) {
+            int index = table.indexOf("key-" + i);
+            assertEquals("key-" + i, table.getKey(index));
+            assertEquals(i + 1, table.getPromised(index));
+            assertEquals("M" + (i % 5), table.getPromisedTo(index));
+            assertEquals(i + 1, table.getAccepted(index));
+            assertEquals("value-" + i, table.getValue(index));
+            long[] history = new long[RegisterTable.HISTORY];
+            for (int depth = 0; depth < history.length; depth++) history[depth] = table.getHistory(index, depth);
+            assertArrayEquals(new long[]{i, i - 1, i - 2, i - 3}, history);
+        }
+    }
+}
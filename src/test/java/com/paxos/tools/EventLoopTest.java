@@ -0,0 +1,42 @@
+package com.paxos.tools;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class EventLoopTest {
+
+    @Test
+    void runsTasksInPostedOrder() throws InterruptedException {
+        EventLoop loop = new EventLoop("test-loop");
+        List<Integer> order = new ArrayList<>();
+        CountDownLatch done = new CountDownLatch(1);
+        for (int i = 0; i < 100; i++) {
+            int n = i;
+            loop.execute(() -> order.add(n));
+        }
+        loop.execute(done::countDown);
+
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        for (int i = 0; i < 100; i++) assertEquals(i, order.get(i));
+        loop.stop();
+    }
+
+    @Test
+    void keepsRunningAfterTaskThrows() throws InterruptedException {
+        EventLoop loop = new EventLoop("test-loop");
+        CountDownLatch done = new CountDownLatch(1);
+        loop.execute(() -> { throw new IllegalStateException("boom"); });
+        loop.execute(() -> { throw new StackOverflowError(); });
+        loop.execute(done::countDown);
+
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        loop.stop();
+    }
+}
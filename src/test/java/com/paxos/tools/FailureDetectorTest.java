@@ -0,0 +1,57 @@
+package com.paxos.tools;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class FailureDetectorTest {
+    private static final long INTERVAL = 20;
+
+    @Test
+    void unknownPeerHasNoSuspicion() {
+        FailureDetector detector = new FailureDetector(INTERVAL);
+        assertEquals(0, detector.phi("M2"));
+        assertTrue(detector.isAvailable("M2"));
+    }
+
+    @Test
+    void regularHeartbeatsKeepPeerAvailable() throws InterruptedException {
+        FailureDetector detector = new FailureDetector(INTERVAL);
+        detector.monitor("M2");
+        for (int i = 0; i < 10; i++) {
+            Thread.sleep(INTERVAL);
+            detector.heartbeat("M2");
+        }
+        assertTrue(detector.phi("M2") < 1, "phi right after a heartbeat");
+        assertTrue(detector.isAvailable("M2"));
+    }
+
+    @Test
+    void phiGrowsWithSilence() throws InterruptedException {
+        FailureDetector detector = new FailureDetector(INTERVAL);
+        detector.heartbeat("M2");
+        double fresh = detector.phi("M2");
+        Thread.sleep(300);
+        double later = detector.phi("M2");
+        assertTrue(later > fresh, "phi " + later + " after silence, " + fresh + " before");
+
+        // far beyond the expected interval and its minimum deviation
+        Thread.sleep(1000);
+        assertFalse(detector.isAvailable("M2"));
+    }
+
+    @Test
+    void suspectedPeerRecoversOnHeartbeat() {
+        FailureDetector detector = new FailureDetector(INTERVAL);
+        detector.monitor("M2");
+        detector.suspect("M2");
+        assertEquals(Double.POSITIVE_INFINITY, detector.phi("M2"));
+        assertFalse(detector.isAvailable("M2"));
+
+        detector.heartbeat("M2");
+        assertTrue(detector.isAvailable("M2"));
+        assertTrue(detector.suspicionLevels().containsKey("M2"));
+    }
+}
@@ -0,0 +1,103 @@
+package com.paxos.tools;
+
+import org.junit.jupiter.api.Test;
+
+import java.net.InetSocketAddress;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MembershipTest {
+
+    private static Membership initial(String... voters) {
+        Map<String, InetSocketAddress> addresses = new LinkedHashMap<>();
+        for (int i = 0; i < voters.length; i++) addresses.put(voters[i], new InetSocketAddress("localhost", 9001 + i));
+        return new Membership(0, addresses, Set.of(voters));
+    }
+
+    @Test
+    void majorityOfVotersIsQuorum() {
+        Membership membership = initial("M1", "M2", "M3");
+        assertFalse(membership.isJoint());
+        assertEquals(2, membership.quorumSize());
+        assertTrue(membership.isQuorum(List.of("M1", "M3")));
+        assertFalse(membership.isQuorum(List.of("M2")));
+        // members that are not voters do not count
+        assertFalse(membership.isQuorum(List.of("M2", "M9")));
+    }
+
+    @Test
+    void fastQuorumIsThreeQuarters() {
+        Membership membership = initial("M1", "M2", "M3", "M4");
+        assertEquals(3, membership.fastQuorumSize());
+        assertTrue(membership.isFastQuorum(List.of("M1", "M2", "M4")));
+        assertFalse(membership.isFastQuorum(List.of("M1", "M2")));
+    }
+
+    @Test
+    void removeNeedsMajorityOfBothConfigurations() {
+        Membership removed = initial("M1", "M2", "M3").apply("REMOVE M2");
+        assertEquals(1, removed.getEpoch());
+        assertEquals(Set.of("M1", "M3"), removed.getVoters());
+        assertTrue(removed.isJoint());
+
+        // the removed voter stays addressable and counts until the joint configuration ends
+        assertTrue(removed.getAddresses().containsKey("M2"));
+        assertTrue(removed.countsToward("M2"));
+        assertFalse(removed.isQuorum(List.of("M1", "M2")));
+        assertTrue(removed.isQuorum(List.of("M1", "M3")));
+
+        Membership settled = removed.apply(Membership.SETTLE);
+        assertFalse(settled.isJoint());
+        assertFalse(settled.getAddresses().containsKey("M2"));
+        assertFalse(settled.countsToward("M2"));
+    }
+
+    @Test
+    void addedMemberVotesOnlyOncePromoted() {
+        Membership added = initial("M1", "M2", "M3").apply("ADD M4 localhost 9004");
+        assertTrue(added.getAddresses().containsKey("M4"));
+        assertFalse(added.countsToward("M4"));
+        assertFalse(added.isJoint());
+
+        Membership promoted = added.apply("PROMOTE M4");
+        assertEquals(Set.of("M1", "M2", "M3", "M4"), promoted.getVoters());
+        assertTrue(promoted.isJoint());
+        // three of the four new voters but only one of the three previous ones
+        assertFalse(promoted.isQuorum(List.of("M1", "M4", "M9")));
+        assertTrue(promoted.isQuorum(List.of("M1", "M2", "M4")));
+    }
+
+    @Test
+    void addedLearnerNeverVotes() {
+        Membership added = initial("M1", "M2", "M3").apply("ADD L1 localhost 9010 learner");
+        assertTrue(added.isLearner("L1"));
+        assertFalse(added.countsToward("L1"));
+    }
+
+    @Test
+    void invalidChangesAreRejected() {
+        Membership membership = initial("M1", "M2", "M3");
+        assertNull(membership.apply("ADD M4 localhost"));
+        assertNull(membership.apply("ADD M4 localhost port"));
+        assertNull(membership.apply("PROMOTE M9"));
+        assertNull(membership.apply("SETTLE now"));
+        assertNull(membership.apply("RENAME M1 M2"));
+        assertNull(membership.apply(null));
+    }
+
+    @Test
+    void advanceKeepsMembersAndEndsJointConfiguration() {
+        Membership next = initial("M1", "M2", "M3").apply("REMOVE M3").advance();
+        assertEquals(2, next.getEpoch());
+        assertEquals(Set.of("M1", "M2"), next.getVoters());
+        assertFalse(next.isJoint());
+        assertFalse(next.getAddresses().containsKey("M3"));
+    }
+}
@@ -0,0 +1,115 @@
+package com.paxos.tools;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PayloadStoreTest {
+
+    /**
+     * @return a value that compresses badly so it spans several chunks
+     */
+    private static String largeValue(int length) {
+        Random random = new Random(42);
+        StringBuilder sb = new StringBuilder(length);
+        for (int i = 0; i < length; i++) sb.append((char) ('!' + random.nextInt(90)));
+        return sb.toString();
+    }
+
+    private static Message accept(String value) {
+        return new Message(Message.MessageType.ACCEPT_REQUEST, "M1", "5", value, null, null, "0");
+    }
+
+    @Test
+    void smallValuesAreSentAsIs() {
+        PayloadStore sender = new PayloadStore("M1");
+        List<Message> chunks = new ArrayList<>();
+        Message msg = accept("small");
+        assertSame(msg, sender.outbound("M2", msg, chunks));
+        assertTrue(chunks.isEmpty());
+    }
+
+    @Test
+    void largeValueIsChunkedOncePerPeerAndReassembled() {
+        PayloadStore sender = new PayloadStore("M1");
+        PayloadStore receiver = new PayloadStore("M2");
+        String value = largeValue(200_000);
+
+        List<Message> chunks = new ArrayList<>();
+        Message referenced = sender.outbound("M2", accept(value), chunks);
+        assertNotEquals(value, referenced.getProposalValue());
+        assertTrue(chunks.size() > 1, "expected several chunks, got " + chunks.size());
+
+        // the peer already has the chunks so later messages only carry the reference
+        List<Message> again = new ArrayList<>();
+        sender.outbound("M2", accept(value), again);
+        assertTrue(again.isEmpty());
+
+        // chunks may arrive in any order, the last one completes the value
+        List<Message> shuffled = new ArrayList<>(chunks);
+        Collections.shuffle(shuffled, new Random(7));
+        for (Message chunk : shuffled) assertTrue(receiver.onChunk(chunk).isEmpty());
+
+        Message resolved = receiver.inbound(referenced, new ArrayList<>());
+        assertEquals(value, resolved.getProposalValue());
+    }
+
+    @Test
+    void messageWaitsForMissingValue() {
+        PayloadStore sender = new PayloadStore("M1");
+        PayloadStore receiver = new PayloadStore("M2");
+        String value = largeValue(10_000);
+
+        List<Message> chunks = new ArrayList<>();
+        Message referenced = sender.outbound("M2", accept(value), chunks);
+
+        List<Message> fetches = new ArrayList<>();
+        assertNull(receiver.inbound(referenced, fetches));
+        assertEquals(1, fetches.size());
+        assertEquals(Message.MessageType.FETCH, fetches.get(0).getType());
+
+        // the sender answers the fetch with the chunks, releasing the parked message
+        List<Message> released = new ArrayList<>();
+        for (Message chunk : sender.onFetch(fetches.get(0))) {
+            released.addAll(receiver.onChunk(chunk));
+        }
+        assertEquals(1, released.size());
+        assertEquals(referenced, released.get(0));
+        assertEquals(value, receiver.inbound(released.get(0), new ArrayList<>()).getProposalValue());
+    }
+
+    @Test
+    void corruptPayloadIsDiscarded() {
+        PayloadStore sender = new PayloadStore("M1");
+        PayloadStore receiver = new PayloadStore("M2");
+        List<Message> chunks = new ArrayList<>();
+        Message referenced = sender.outbound("M2", accept(largeValue(10_000)), chunks);
+
+        for (Message chunk : chunks) {
+            receiver.onChunk(chunk.withValues(chunk.getProposalValue().replace('A', 'B'), chunk.getAcceptedValue()));
+        }
+        assertNull(receiver.inbound(referenced, new ArrayList<>()));
+    }
+
+    @Test
+    void unsentChunksAreSentAgain() {
+        PayloadStore sender = new PayloadStore("M1");
+        String value = largeValue(10_000);
+        List<Message> chunks = new ArrayList<>();
+        sender.outbound("M2", accept(value), chunks);
+        sender.unsent("M2", chunks);
+
+        List<Message> again = new ArrayList<>();
+        sender.outbound("M2", accept(value), again);
+        assertEquals(chunks.size(), again.size());
+    }
+}
@@ -0,0 +1,40 @@
+package com.paxos.tools;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PeerSenderTest {
+
+    private static Message accept(String ballot, String groupId, String epoch) {
+        return new Message(Message.MessageType.ACCEPT_REQUEST, "M1", ballot, "v", null, null, groupId, null, epoch);
+    }
+
+    @Test
+    void higherBallotSupersedesQueuedRound() {
+        assertTrue(PeerSender.compareRounds(accept("5", "0", "1"), accept("9", "0", "1")) < 0);
+        assertEquals(0, PeerSender.compareRounds(accept("5", "0", "1"), accept("5", "0", "1")));
+    }
+
+    @Test
+    void lateLowerBallotDoesNotReplaceNewerRound() {
+        assertTrue(PeerSender.compareRounds(accept("9", "0", "1"), accept("5", "0", "1")) > 0);
+    }
+
+    @Test
+    void otherGroupsTypesAndEpochsAreNotCompared() {
+        assertNull(PeerSender.compareRounds(accept("5", "0", "1"), accept("9", "1", "1")));
+        assertNull(PeerSender.compareRounds(accept("5", "0", "1"), accept("9", "0", "2")));
+        Message prepare = new Message(Message.MessageType.PREPARE, "M1", "9", null, null, null, "0", null, "1");
+        assertNull(PeerSender.compareRounds(accept("5", "0", "1"), prepare));
+        assertNull(PeerSender.compareRounds(accept("5", "0", "1"), accept("x", "0", "1")));
+    }
+
+    @Test
+    void learnsOfAGroupAreEqual() {
+        Message learn = new Message(Message.MessageType.LEARN, "M1", null, null, null, "v", "0");
+        assertEquals(0, PeerSender.compareRounds(learn, learn.withValues(null, "v")));
+    }
+}
@@ -0,0 +1,71 @@
+package com.paxos.tools;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SimpleJsonUtilTest {
+
+    private static Map<String, String> roundTrip(Map<String, String> map) {
+        return SimpleJsonUtil.parse(SimpleJsonUtil.stringify(map));
+    }
+
+    @Test
+    void plainValuesRoundTrip() {
+        Map<String, String> map = new LinkedHashMap<>();
+        map.put("type", "VALUE");
+        map.put("proposalValue", "M1");
+        assertEquals(map, roundTrip(map));
+    }
+
+    @Test
+    void specialCharactersRoundTrip() {
+        Map<String, String> map = new LinkedHashMap<>();
+        map.put("quotes", "say \"hi\"");
+        map.put("backslash", "C:\\paxos\\");
+        map.put("lines", "one\ntwo\r\nthree\tfour");
+        map.put("control", "bell\u0007nul\u0000");
+        map.put("separators", "a,b:c{d}e");
+        map.put("unicode", "gr\u00fc\u00dfe \u4f60\u597d");
+        map.put("key \"with\" quotes", "value");
+        assertEquals(map, roundTrip(map));
+    }
+
+    @Test
+    void stringifiedOutputIsOneLine() {
+        String json = SimpleJsonUtil.stringify(Map.of("value", "line\nbreak\u001f"));
+        assertFalse(json.contains("\n"));
+        assertFalse(json.contains("\u001f"));
+    }
+
+    @Test
+    void nestedJsonRoundTrips() {
+        Map<String, String> inner = new LinkedHashMap<>();
+        inner.put("number", "7");
+        inner.put("value", "x \"y\"\n");
+        Map<String, String> outer = new LinkedHashMap<>();
+        outer.put("0", SimpleJsonUtil.stringify(inner));
+        outer.put("1", "{\"not\":\"parsed\"}");
+
+        Map<String, String> parsed = roundTrip(outer);
+        assertEquals(outer, parsed);
+        assertEquals(inner, SimpleJsonUtil.parse(parsed.get("0")));
+    }
+
+    @Test
+    void unknownEscapesAreKept() {
+        Map<String, String> parsed = SimpleJsonUtil.parse("{\"a\":\"\\q\\u12\"}");
+        assertEquals("qu12", parsed.get("a"));
+    }
+
+    @Test
+    void notAnObjectParsesEmpty() {
+        assertTrue(SimpleJsonUtil.parse("[1,2]").isEmpty());
+        assertTrue(SimpleJsonUtil.parse("").isEmpty());
+    }
+}
@@ -0,0 +1,98 @@
+package com.paxos.tools;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TimerWheelTest {
+    private static final long TICK = 5;
+
+    @Test
+    void runsTaskNoEarlierThanItsDelay() throws InterruptedException {
+        TimerWheel wheel = new TimerWheel("test-wheel", TICK, 64);
+        CountDownLatch done = new CountDownLatch(1);
+        AtomicLong ranAt = new AtomicLong();
+        long start = System.nanoTime();
+        wheel.schedule(100, () -> {
+            ranAt.set(System.nanoTime());
+            done.countDown();
+        });
+
+        assertTrue(done.await(2, TimeUnit.SECONDS));
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(ranAt.get() - start) >= 100);
+        wheel.stop();
+    }
+
+    @Test
+    void runsTasksInDeadlineOrder() throws InterruptedException {
+        TimerWheel wheel = new TimerWheel("test-wheel", TICK, 64);
+        List<String> order = new CopyOnWriteArrayList<>();
+        CountDownLatch done = new CountDownLatch(3);
+        wheel.schedule(150, () -> { order.add("late"); done.countDown(); });
+        wheel.schedule(80, () -> { order.add("middle"); done.countDown(); });
+        wheel.schedule(10, () -> { order.add("early"); done.countDown(); });
+
+        assertTrue(done.await(2, TimeUnit.SECONDS));
+        assertEquals(List.of("early", "middle", "late"), order);
+        wheel.stop();
+    }
+
+    @Test
+    void delayLongerThanOneRotationWaitsForItsRound() throws InterruptedException {
+        // 8 buckets of 5ms - one rotation is 40ms, so a 130ms timer passes its bucket three times first
+        TimerWheel wheel = new TimerWheel("test-wheel", TICK, 8);
+        CountDownLatch done = new CountDownLatch(1);
+        AtomicLong ranAt = new AtomicLong();
+        long start = System.nanoTime();
+        wheel.schedule(130, () -> {
+            ranAt.set(System.nanoTime());
+            done.countDown();
+        });
+
+        assertTrue(done.await(2, TimeUnit.SECONDS));
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(ranAt.get() - start) >= 130);
+        wheel.stop();
+    }
+
+    @Test
+    void nonPositiveDelayRunsOnNextTick() throws InterruptedException {
+        TimerWheel wheel = new TimerWheel("test-wheel", TICK, 64);
+        CountDownLatch done = new CountDownLatch(2);
+        wheel.schedule(0, done::countDown);
+        wheel.schedule(-50, done::countDown);
+
+        assertTrue(done.await(1, TimeUnit.SECONDS));
+        wheel.stop();
+    }
+
+    @Test
+    void stopDropsPendingTimers() throws InterruptedException {
+        TimerWheel wheel = new TimerWheel("test-wheel", TICK, 64);
+        AtomicBoolean ran = new AtomicBoolean();
+        wheel.schedule(100, () -> ran.set(true));
+        wheel.stop();
+
+        Thread.sleep(250);
+        assertFalse(ran.get());
+    }
+
+    @Test
+    void failingTaskDoesNotStopTheWheel() throws InterruptedException {
+        TimerWheel wheel = new TimerWheel("test-wheel", TICK, 64);
+        CountDownLatch done = new CountDownLatch(1);
+        wheel.schedule(10, () -> { throw new IllegalStateException("boom"); });
+        wheel.schedule(30, done::countDown);
+
+        assertTrue(done.await(1, TimeUnit.SECONDS));
+        wheel.stop();
+    }
+}